@@ -2,24 +2,203 @@ package sigea.entities;
 
 
 import sigea.entities.MsgReading;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 /**
+ * Readings stored column wise in parallel primitive arrays, one slot per
+ * reading. The arrays may be longer than the batch, only the first size()
+ * slots are readings. A batch belongs to its observers once it is emitted,
+ * observers such as the broadcast queue hold on to it, so every datagram is
+ * decoded into a new batch.
+ *
  * * * @author Pasquale Livecchi
  */
 @Getter
 public class BatchOfMsgReadings {
 
 //    private final MsgType msgType;
-    private final List<MsgReading> msgReadings;
+    private int[] sensorIds;
+    private double[] values;
+    private long[] times;
+    private byte[] qualities;
+    // only set on batches aggregated over a period, values then hold the means
+    private double[] minimums;
+    private double[] maximums;
+    private int size;
+    @Getter(AccessLevel.NONE)
+    private final IntFunction<String> keyLookup;
+    @Getter(AccessLevel.NONE)
+    private List<MsgReading> msgReadings;
+
+    /**
+     *
+     * @param capacity - initial number of slots
+     * @param keyLookup - maps a sensor id to its message key
+     */
+    public BatchOfMsgReadings(int capacity, IntFunction<String> keyLookup) {
+        this.sensorIds = new int[capacity];
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+        this.qualities = new byte[capacity];
+        this.keyLookup = keyLookup;
+    }
 
     public BatchOfMsgReadings(List<MsgReading> msgList) {
 //        this.msgType = msgType;
+        this(msgList.size(), id -> msgList.get(id).getMsgKey());
+        for (int i = 0; i < msgList.size(); i++) {
+            MsgReading reading = msgList.get(i);
+            add(i, reading.getValue(), reading.getTime(), reading.getQuality());
+        }
         this.msgReadings = msgList;
     }
 
+    /**
+     * Appends a reading
+     *
+     * @param sensorId
+     * @param value
+     * @param time
+     * @param quality
+     */
+    public void add(int sensorId, double value, long time, byte quality) {
+        int index = append(1);
+        sensorIds[index] = sensorId;
+        values[index] = value;
+        times[index] = time;
+        qualities[index] = quality;
+    }
+
+    /**
+     * Adds min and max columns for a batch that aggregates a period, the
+     * aggregating producer fills them in along with the mean values
+     */
+    public void addAggregateColumns() {
+        if (minimums == null) {
+            minimums = new double[sensorIds.length];
+            maximums = new double[sensorIds.length];
+        }
+    }
+
+    public boolean isAggregated() {
+        return minimums != null;
+    }
+
+    /**
+     * Grows the batch by count slots for a producer to fill in directly
+     *
+     * @param count
+     * @return index of the first new slot
+     */
+    public int append(int count) {
+        int start = size;
+        ensureCapacity(start + count);
+        size = start + count;
+        msgReadings = null;
+        return start;
+    }
+
+    /**
+     * Shrinks the batch to its first count slots
+     *
+     * @param count
+     */
+    public void truncate(int count) {
+        size = Math.min(size, Math.max(0, count));
+        msgReadings = null;
+    }
+
+    /**
+     * Drops the slots the predicate rejects and moves the rest down, keeping
+     * their order. The predicate sees every slot once, in order, before any
+     * slot at or after it has moved.
+     *
+     * @param keep - tests a slot index
+     */
+    public void retainIf(IntPredicate keep) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep.test(i)) {
+                if (kept != i) {
+                    sensorIds[kept] = sensorIds[i];
+                    values[kept] = values[i];
+                    times[kept] = times[i];
+                    qualities[kept] = qualities[i];
+                    if (minimums != null) {
+                        minimums[kept] = minimums[i];
+                        maximums[kept] = maximums[i];
+                    }
+                }
+                kept++;
+            }
+        }
+        truncate(kept);
+    }
+
+    /**
+     * Copies the readings of the sensors the predicate accepts into a new
+     * batch with the same key lookup
+     *
+     * @param keepSensor - tests a sensor id
+     * @return
+     */
+    public BatchOfMsgReadings select(IntPredicate keepSensor) {
+        BatchOfMsgReadings selected = new BatchOfMsgReadings(0, keyLookup);
+        for (int i = 0; i < size; i++) {
+            if (keepSensor.test(sensorIds[i])) {
+                selected.add(sensorIds[i], values[i], times[i], qualities[i]);
+            }
+        }
+        return selected;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > sensorIds.length) {
+            int grown = Math.max(capacity, sensorIds.length * 2);
+            sensorIds = Arrays.copyOf(sensorIds, grown);
+            values = Arrays.copyOf(values, grown);
+            times = Arrays.copyOf(times, grown);
+            qualities = Arrays.copyOf(qualities, grown);
+            if (minimums != null) {
+                minimums = Arrays.copyOf(minimums, grown);
+                maximums = Arrays.copyOf(maximums, grown);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getMsgKey(int index) {
+        return keyLookup.apply(sensorIds[index]);
+    }
+
+    /**
+     * Adapter for observers that work with reading objects, the list is
+     * created on first use
+     *
+     * @return
+     */
+    public List<MsgReading> getMsgReadings() {
+        if (msgReadings == null) {
+            List<MsgReading> readings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                readings.add(new MsgReading(sensorIds[i], getMsgKey(i), times[i], values[i], qualities[i]));
+            }
+            msgReadings = Collections.unmodifiableList(readings);
+        }
+        return msgReadings;
+    }
+
     public boolean hasData() {
-        return !msgReadings.isEmpty();
+        return size > 0;
     }
 }
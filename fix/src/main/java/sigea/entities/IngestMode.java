@@ -0,0 +1,33 @@
+package sigea.entities;
+
+/**
+ * How udp ports are read by msg acquisition
+ *
+ * @author Pasquale Livecchi
+ */
+public enum IngestMode {
+    // one blocking channel and io thread per port
+    BLOCKING,
+    // all ports registered as non blocking channels on a few selector threads
+    SELECTOR,
+    // one blocking channel per port read on a virtual thread, BLOCKING before Java 21
+    VIRTUAL;
+
+    /**
+     * Parses a setting value, falling back to BLOCKING when it is missing or
+     * not recognized
+     *
+     * @param value
+     * @return
+     */
+    public static IngestMode fromSetting(String value) {
+        if (value != null) {
+            for (IngestMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return BLOCKING;
+    }
+}
@@ -40,6 +40,18 @@ public class Message {
     private int bitOffset;
     @CsvBindByName(column = "REMARKS")
     private String remarks;
+    // smallest change that is emitted, negative emits every reading
+    @CsvBindByName(column = "DEADBAND")
+    private double deadband = -1;
+    // layout the field belongs to on connections that carry several, see MsgType
+    @CsvBindByName(column = "MSG_TYPE")
+    private String layout;
+    // overrides the byte order of the connection for this field
+    @CsvBindByName(column = "BYTE_ORDER")
+    private String byteOrder;
+    // flagged stale when not updated for this long, 0 never goes stale
+    @CsvBindByName(column = "STALE_MS")
+    private long staleMs;
     private MsgType msgType;
     private int id;
 
@@ -51,9 +63,41 @@ public class Message {
         this.msgName = fieldName;
     }
 
+    public MsgType getMsgType() {
+        if (msgType == null) {
+            msgType = MsgType.fromSetting(layout);
+        }
+        return msgType;
+    }
+
     public String uniqueKeyName() {
         return msgName + ":" + fieldName;
     }
+
+    /**
+     * Number of elements of an array field, 1 when DIM is not a number above
+     * 1 (N/A for scalars)
+     *
+     * @return
+     */
+    public int arrayLength() {
+        try {
+            return dimension == null ? 1 : Math.max(1, Integer.parseInt(dimension.trim()));
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
+    /**
+     * Key of an element of the field, elements of an array field are keyed
+     * msgName:fieldName[index]
+     *
+     * @param index
+     * @return
+     */
+    public String elementKeyName(int index) {
+        return arrayLength() > 1 ? uniqueKeyName() + "[" + index + "]" : uniqueKeyName();
+    }
     
     @Override
     public int hashCode() {
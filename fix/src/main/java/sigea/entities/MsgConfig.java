@@ -2,6 +2,7 @@ package sigea.entities;
 
 import java.util.ArrayList;
 import java.util.List;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -15,4 +16,28 @@ public class MsgConfig {
     private String id;
     private List<Message> msgs = new ArrayList<>();
     private List<MsgConnection> msgConnections = new ArrayList<>();
+    private IngestMode ingestMode = IngestMode.BLOCKING;
+    private int selectorThreads = 1;
+    private long healthWindowSeconds = 30;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private MsgKeyDictionary keyDictionary;
+
+    public void setMsgs(List<Message> msgs) {
+        this.msgs = msgs;
+        this.keyDictionary = null;
+    }
+
+    /**
+     * The id dictionary of the messages, built on first use which also sets
+     * the id of every message
+     *
+     * @return
+     */
+    public synchronized MsgKeyDictionary getKeyDictionary() {
+        if (keyDictionary == null) {
+            keyDictionary = new MsgKeyDictionary(msgs);
+        }
+        return keyDictionary;
+    }
 }
@@ -18,6 +18,57 @@ public class MsgConnection {
     private String nameId;
     @CsvBindByName(column="PORT_IP", required=false)
     private int port;
+    // byte order of fields and headers, LITTLE_ENDIAN or BIG_ENDIAN
+    @CsvBindByName(column="BYTE_ORDER", required=false)
+    private String byteOrder = "LITTLE_ENDIAN";
+    // number of SO_REUSEPORT sockets reading the port, each on its own thread.
+    // the kernel picks the socket by a hash of the source address and port, so
+    // only traffic from several senders is spread, a single sender always
+    // lands on one receiver
+    @CsvBindByName(column="RECEIVERS", required=false)
+    private int receivers = 1;
+    // datagrams buffered between receiving and decoding, and what to drop once full
+    @CsvBindByName(column="QUEUE_SIZE", required=false)
+    private int queueSize = 1024;
+    @CsvBindByName(column="OVERFLOW", required=false)
+    private String overflow = OverflowStrategy.DROP_OLDEST.name();
+    // RX hands datagrams to decoding through Rx queues, RING through a ring buffer
+    // of QUEUE_SIZE slots and a decode thread of its own that drops the newest when full
+    @CsvBindByName(column="HANDOFF", required=false)
+    private String handoff = "RX";
+    // how the ring decode thread waits, see WaitStrategy
+    @CsvBindByName(column="RING_WAIT", required=false)
+    private String ringWait = "PARK";
+    // which datagrams are decoded, see SamplingMode
+    @CsvBindByName(column="SAMPLING", required=false)
+    private String sampling = SamplingMode.SAMPLE.name();
+    // sample and aggregate period
+    @CsvBindByName(column="PERIOD_MS", required=false)
+    private long periodMs = 1000;
+    // keep one datagram out of n when decimating
+    @CsvBindByName(column="DECIMATE", required=false)
+    private int decimate = 1;
+    // unchanged readings of deadband fields are still emitted this often
+    @CsvBindByName(column="HEARTBEAT_MS", required=false)
+    private long heartbeatMs = 10000;
+    // check carried in the last bytes of every datagram, see IntegrityCheck
+    @CsvBindByName(column="INTEGRITY", required=false)
+    private String integrity = "SUM16";
+    // byte offset of a 32 bit datagram sequence number, negative when datagrams are not numbered
+    @CsvBindByName(column="SEQUENCE_OFFSET", required=false)
+    private int sequenceOffset = -1;
+    // byte offset of the MsgType id of a datagram's layout, negative when the port carries a single layout
+    @CsvBindByName(column="TYPE_OFFSET", required=false)
+    private int typeOffset = -1;
+    // frames split over several datagrams that each start with a fragment header, see FrameFragments
+    @CsvBindByName(column="FRAGMENTED", required=false)
+    private boolean fragmented;
+    // incomplete frames are dropped after this
+    @CsvBindByName(column="FRAGMENT_TIMEOUT_MS", required=false)
+    private long fragmentTimeoutMs = 1000;
+    // also report the health of every MSG_NAME of the connection
+    @CsvBindByName(column="HEALTH_GROUPS", required=false)
+    private boolean healthGroups;
     public MsgConnection() {
     }
     public MsgConnection(String nameId){
@@ -0,0 +1,60 @@
+package sigea.entities;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns every message of a config a dense integer id, in config order, and
+ * maps between ids and message keys so readings can carry an int instead of
+ * a key string. The elements of an array field get consecutive ids, the id of
+ * the message is the id of its first element.
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgKeyDictionary {
+
+    public static final int UNKNOWN_ID = -1;
+
+    private final String[] keys;
+    private final Map<String, Integer> ids;
+
+    /**
+     * Sets the id of every message to the id of its first element
+     *
+     * @param msgs
+     */
+    public MsgKeyDictionary(List<Message> msgs) {
+        int count = 0;
+        for (Message msg : msgs) {
+            count += msg.arrayLength();
+        }
+        keys = new String[count];
+        ids = new HashMap<>(count * 2);
+        int id = 0;
+        for (Message msg : msgs) {
+            msg.setId(id);
+            for (int k = 0; k < msg.arrayLength(); k++, id++) {
+                keys[id] = msg.elementKeyName(k);
+                ids.put(keys[id], id);
+            }
+        }
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String key(int id) {
+        return keys[id];
+    }
+
+    /**
+     *
+     * @param key
+     * @return the id of the key or UNKNOWN_ID
+     */
+    public int id(String key) {
+        return ids.getOrDefault(key, UNKNOWN_ID);
+    }
+}
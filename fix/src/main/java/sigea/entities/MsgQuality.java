@@ -7,7 +7,9 @@ public enum MsgQuality {
     NONE, 
     UNKNOWN, 
     BAD, 
-    GOOD;
+    GOOD,
+    // decoded fine but outside RANGE_LOW to RANGE_HIGH
+    OUT_OF_RANGE;
 
     public byte byteValue() {
         return (byte) ordinal();
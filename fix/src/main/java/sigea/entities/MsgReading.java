@@ -13,6 +13,7 @@ import lombok.ToString;
 @Getter
 public class MsgReading {
 
+    private final int msgId;
     private final String msgKey;
     private final byte quality;
     private final long time;
@@ -27,6 +28,11 @@ public class MsgReading {
     }
 
     public MsgReading(String msgKey, long time, Double value, byte quality) {
+        this(MsgKeyDictionary.UNKNOWN_ID, msgKey, time, value, quality);
+    }
+
+    public MsgReading(int msgId, String msgKey, long time, double value, byte quality) {
+        this.msgId = msgId;
         this.msgKey = msgKey;
         this.time = time;
         this.value = value;
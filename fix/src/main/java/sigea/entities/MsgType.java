@@ -7,16 +7,36 @@ import lombok.Getter;
  */
 @Getter
 public enum MsgType {
-    MT("MT MESSAGE", "MT"), 
-    IFN("IFN MESSAGE", "IFN"), 
-    NSERIES("NSERIES MESSAGE", "NSERIES"), 
-    ARC("ARC MESSAGE", "ARC");
+    MT("MT MESSAGE", "MT", 1), 
+    IFN("IFN MESSAGE", "IFN", 2), 
+    NSERIES("NSERIES MESSAGE", "NSERIES", 3), 
+    ARC("ARC MESSAGE", "ARC", 4);
 
     private final String longName;
     private final String shortName;
+    // layout id carried in the type header of a datagram
+    private final int typeId;
 
-    private MsgType(String longName, String shortName) {
+    private MsgType(String longName, String shortName, int typeId) {
         this.longName = longName;
         this.shortName = shortName;
+        this.typeId = typeId;
+    }
+
+    /**
+     * Parses a config value by short name
+     *
+     * @param value
+     * @return the type or null when it is missing or not recognized
+     */
+    public static MsgType fromSetting(String value) {
+        if (value != null) {
+            for (MsgType type : values()) {
+                if (type.shortName.equalsIgnoreCase(value.trim())) {
+                    return type;
+                }
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,36 @@
+package sigea.entities;
+
+/**
+ * What a bounded receive queue does with datagrams when the decode stage falls
+ * behind
+ *
+ * @author Pasquale Livecchi
+ */
+public enum OverflowStrategy {
+    // drop the oldest queued datagram to make room
+    DROP_OLDEST,
+    // drop the datagram that did not fit
+    DROP_NEWEST,
+    // keep only the most recent datagram
+    LATEST,
+    // fail the stream, which reopens the connection
+    ERROR;
+
+    /**
+     * Parses a config value, falling back to DROP_OLDEST when it is missing or
+     * not recognized
+     *
+     * @param value
+     * @return
+     */
+    public static OverflowStrategy fromSetting(String value) {
+        if (value != null) {
+            for (OverflowStrategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(value.trim())) {
+                    return strategy;
+                }
+            }
+        }
+        return DROP_OLDEST;
+    }
+}
@@ -0,0 +1,35 @@
+package sigea.entities;
+
+/**
+ * How many of the datagrams received on a connection are turned into readings
+ *
+ * @author Pasquale Livecchi
+ */
+public enum SamplingMode {
+    // every datagram
+    FULL,
+    // the most recent datagram of each period
+    SAMPLE,
+    // every nth datagram
+    DECIMATE,
+    // min, max and mean of every datagram in each period
+    AGGREGATE;
+
+    /**
+     * Parses a config value, falling back to SAMPLE when it is missing or not
+     * recognized
+     *
+     * @param value
+     * @return
+     */
+    public static SamplingMode fromSetting(String value) {
+        if (value != null) {
+            for (SamplingMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return SAMPLE;
+    }
+}
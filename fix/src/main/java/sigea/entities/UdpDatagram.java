@@ -7,6 +7,9 @@ package sigea.entities;
 
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 /**
@@ -19,9 +22,38 @@ public class UdpDatagram {
 
     private final SocketAddress sourceAddress;
     private final ByteBuffer datagram;
+    // epoch millis, shared by every reading decoded from the datagram
+    private final long receiveTime = System.currentTimeMillis();
+    @Getter(AccessLevel.NONE)
+    private final Consumer<ByteBuffer> releaser;
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean released = new AtomicBoolean();
 
     public UdpDatagram(SocketAddress sourceAddress, ByteBuffer datagram) {
+        this(sourceAddress, datagram, buf -> {
+        });
+    }
+
+    /**
+     * Creates a datagram backed by a leased buffer
+     *
+     * @param sourceAddress
+     * @param datagram
+     * @param releaser - called once with the buffer when it is released
+     */
+    public UdpDatagram(SocketAddress sourceAddress, ByteBuffer datagram, Consumer<ByteBuffer> releaser) {
         this.sourceAddress = sourceAddress;
         this.datagram = datagram;
+        this.releaser = releaser;
+    }
+
+    /**
+     * Hands the backing buffer back to its owner, the datagram must not be
+     * read after this. Only the first call releases the buffer.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            releaser.accept(datagram);
+        }
     }
 }
@@ -0,0 +1,114 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.function.IntPredicate;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.MsgKeyDictionary;
+
+/**
+ * Binary frames of the GUI broadcast, big endian. Every frame is an int length
+ * of the rest of the frame followed by a type byte:
+ *
+ * KEYS - int count, then per key an int sensor id, a short length and the
+ * UTF-8 key
+ *
+ * READINGS - int count, then per reading an int sensor id, a quality byte, a
+ * long time and a double value
+ *
+ * SNAPSHOT - laid out like READINGS, the last reading of every sensor that
+ * has one
+ *
+ * PONG - no payload
+ *
+ * Frames are encoded into a single reused direct buffer, a frame is only valid
+ * until the next one is encoded.
+ *
+ * @author Pasquale Livecchi
+ */
+public class BroadcastFrames {
+
+    public static final byte KEYS = 1;
+    public static final byte READINGS = 2;
+    public static final byte PONG = 3;
+    public static final byte SNAPSHOT = 4;
+    public static final int READING_BYTES = Integer.BYTES + 1 + Long.BYTES + Double.BYTES;
+    // length and type
+    private static final int HEADER_BYTES = Integer.BYTES + 1;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    public ByteBuffer keys(MsgKeyDictionary keyDictionary) {
+        return keys(keyDictionary, id -> true);
+    }
+
+    /**
+     *
+     * @param keyDictionary
+     * @param subscribed - tests a sensor id
+     * @return a KEYS frame of the subscribed sensors
+     */
+    public ByteBuffer keys(MsgKeyDictionary keyDictionary, IntPredicate subscribed) {
+        byte[][] keys = new byte[keyDictionary.size()][];
+        int count = 0;
+        int bytes = Integer.BYTES;
+        for (int id = 0; id < keys.length; id++) {
+            if (subscribed.test(id)) {
+                keys[id] = keyDictionary.key(id).getBytes(StandardCharsets.UTF_8);
+                bytes += Integer.BYTES + Short.BYTES + keys[id].length;
+                count++;
+            }
+        }
+        ByteBuffer buf = start(KEYS, bytes).putInt(count);
+        for (int id = 0; id < keys.length; id++) {
+            if (keys[id] != null) {
+                buf.putInt(id).putShort((short) keys[id].length).put(keys[id]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public ByteBuffer readings(Iterable<BatchOfMsgReadings> batches) {
+        return readings(READINGS, batches);
+    }
+
+    public ByteBuffer snapshot(BatchOfMsgReadings batch) {
+        return readings(SNAPSHOT, Collections.singletonList(batch));
+    }
+
+    private ByteBuffer readings(byte type, Iterable<BatchOfMsgReadings> batches) {
+        int count = 0;
+        for (BatchOfMsgReadings batch : batches) {
+            count += batch.size();
+        }
+        ByteBuffer buf = start(type, Integer.BYTES + count * READING_BYTES).putInt(count);
+        for (BatchOfMsgReadings batch : batches) {
+            int[] sensorIds = batch.getSensorIds();
+            byte[] qualities = batch.getQualities();
+            long[] times = batch.getTimes();
+            double[] values = batch.getValues();
+            for (int i = 0; i < batch.size(); i++) {
+                buf.putInt(sensorIds[i]).put(qualities[i]).putLong(times[i]).putDouble(values[i]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public ByteBuffer pong() {
+        ByteBuffer buf = start(PONG, 0);
+        buf.flip();
+        return buf;
+    }
+
+    private ByteBuffer start(byte type, int payloadBytes) {
+        int frameBytes = HEADER_BYTES + payloadBytes;
+        if (frameBytes > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(frameBytes - 1) << 1);
+        }
+        buffer.clear();
+        return buffer.putInt(1 + payloadBytes).put(type);
+    }
+}
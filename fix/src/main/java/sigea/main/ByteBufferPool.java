@@ -0,0 +1,60 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A bounded pool of direct byte buffers of a fixed capacity. Buffers are
+ * leased by the receiving side and released once the data has been consumed,
+ * so steady state receiving does not allocate. When the pool is empty a new
+ * buffer is allocated, and buffers released into a full pool are left to the
+ * garbage collector.
+ *
+ * @author Pasquale Livecchi
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final Queue<ByteBuffer> buffers;
+
+    /**
+     *
+     * @param bufferSize - capacity of every buffer in the pool
+     * @param maxPooled - maximum number of idle buffers kept for reuse
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Leases a cleared buffer from the pool
+     *
+     * @return
+     */
+    public ByteBuffer lease() {
+        ByteBuffer buf = buffers.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buf;
+    }
+
+    /**
+     * Returns a leased buffer to the pool, the caller must not use it after
+     * this
+     *
+     * @param buf
+     */
+    public void release(ByteBuffer buf) {
+        if (buf != null && buf.isDirect() && buf.capacity() == bufferSize) {
+            buf.clear();
+            buffers.offer(buf);
+        }
+    }
+}
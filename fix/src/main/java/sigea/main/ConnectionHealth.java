@@ -0,0 +1,227 @@
+package sigea.main;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgQuality;
+
+/**
+ * Health counters of one connection, updated in a single pass over every batch
+ * as it is decoded and read out once per health window. A batch is ok when at
+ * least one of its readings is. Readings can also be counted per sensor group,
+ * the fields sharing a MSG_NAME.
+ *
+ * Count can be called from any number of threads.
+ *
+ * @author Pasquale Livecchi
+ */
+public class ConnectionHealth {
+
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte NONE = MsgQuality.NONE.byteValue();
+    private static final int NO_GROUP = -1;
+
+    @Getter
+    private final String name;
+    private final Option<SequenceTracker> sequenceTracker;
+    private final LongAdder okBatches = new LongAdder();
+    private final LongAdder badBatches = new LongAdder();
+    private final LongAdder okReadings = new LongAdder();
+    private final LongAdder badReadings = new LongAdder();
+    // group of sensor id idBase + i, empty when groups are not counted
+    private final int idBase;
+    private final int[] groupOfIds;
+    private final String[] groupNames;
+    private final LongAdder[] groupOk;
+    private final LongAdder[] groupBad;
+    // totals at the end of the previous window
+    private Window previous;
+
+    /**
+     *
+     * @param name - connection name
+     * @param msgs - with ids assigned by the key dictionary
+     * @param groups - whether readings are also counted per MSG_NAME
+     * @param sequenceTracker
+     */
+    public ConnectionHealth(String name, Seq<Message> msgs, boolean groups, Option<SequenceTracker> sequenceTracker) {
+        this.name = name;
+        this.sequenceTracker = sequenceTracker;
+        Seq<Message> grouped = groups ? msgs : List.empty();
+        Seq<String> names = grouped.map(Message::getMsgName).distinct();
+        this.groupNames = names.toJavaList().toArray(new String[0]);
+        this.groupOk = new LongAdder[groupNames.length];
+        this.groupBad = new LongAdder[groupNames.length];
+        for (int g = 0; g < groupNames.length; g++) {
+            groupOk[g] = new LongAdder();
+            groupBad[g] = new LongAdder();
+        }
+        this.idBase = grouped.map(Message::getId).min().getOrElse(0);
+        int idEnd = grouped.map(msg -> msg.getId() + msg.arrayLength()).max().getOrElse(0);
+        this.groupOfIds = new int[Math.max(0, idEnd - idBase)];
+        Arrays.fill(groupOfIds, NO_GROUP);
+        Map<String, Integer> groupIndex = names.zipWithIndex().toMap(name_index -> name_index);
+        for (Message msg : grouped) {
+            int from = msg.getId() - idBase;
+            Arrays.fill(groupOfIds, from, from + msg.arrayLength(), groupIndex.get(msg.getMsgName()).get());
+        }
+        this.previous = new Window(new long[groupNames.length], new long[groupNames.length]);
+    }
+
+    /**
+     * Counts the readings of a batch, empty batches mark errors and count as
+     * not ok
+     *
+     * @param batch
+     */
+    public void count(BatchOfMsgReadings batch) {
+        int size = batch.size();
+        byte[] qualities = batch.getQualities();
+        int[] sensorIds = batch.getSensorIds();
+        int ok = 0;
+        // readings of a group are mostly next to each other, so runs are added at once
+        int runGroup = NO_GROUP;
+        int runOk = 0;
+        int runSize = 0;
+        for (int i = 0; i < size; i++) {
+            int isOk = qualities[i] == GOOD || qualities[i] == NONE ? 1 : 0;
+            ok += isOk;
+            if (groupOfIds.length > 0) {
+                int group = group(sensorIds[i]);
+                if (group != runGroup) {
+                    addRun(runGroup, runOk, runSize);
+                    runGroup = group;
+                    runOk = 0;
+                    runSize = 0;
+                }
+                runOk += isOk;
+                runSize++;
+            }
+        }
+        addRun(runGroup, runOk, runSize);
+        okReadings.add(ok);
+        badReadings.add(size - ok);
+        (ok > 0 ? okBatches : badBatches).increment();
+    }
+
+    private int group(int sensorId) {
+        int index = sensorId - idBase;
+        return index >= 0 && index < groupOfIds.length ? groupOfIds[index] : NO_GROUP;
+    }
+
+    private void addRun(int group, int ok, int size) {
+        if (group != NO_GROUP) {
+            groupOk[group].add(ok);
+            groupBad[group].add(size - ok);
+        }
+    }
+
+    public int groupCount() {
+        return groupNames.length;
+    }
+
+    public String groupName(int group) {
+        return groupNames[group];
+    }
+
+    /**
+     * Counts since the previous call, called by the single health timer
+     *
+     * @return
+     */
+    public Window nextWindow() {
+        long[] ok = new long[groupNames.length];
+        long[] bad = new long[groupNames.length];
+        for (int g = 0; g < groupNames.length; g++) {
+            ok[g] = groupOk[g].sum();
+            bad[g] = groupBad[g].sum();
+        }
+        Window total = new Window(ok, bad);
+        total.okBatches = okBatches.sum();
+        total.badBatches = badBatches.sum();
+        total.okReadings = okReadings.sum();
+        total.badReadings = badReadings.sum();
+        total.lost = sequenceTracker.map(SequenceTracker::getLost).getOrElse(0L);
+        total.received = sequenceTracker.map(SequenceTracker::getReceived).getOrElse(0L);
+        Window window = total.minus(previous);
+        previous = total;
+        return window;
+    }
+
+    /**
+     * Counts of one health window
+     */
+    @Getter
+    public static class Window {
+
+        private long okBatches;
+        private long badBatches;
+        private long okReadings;
+        private long badReadings;
+        // datagrams lost upstream, and lost plus received
+        private long lost;
+        private long received;
+        private final long[] groupOk;
+        private final long[] groupBad;
+
+        Window(long[] groupOk, long[] groupBad) {
+            this.groupOk = groupOk;
+            this.groupBad = groupBad;
+        }
+
+        public long getExpected() {
+            return lost + received;
+        }
+
+        public long getGroupOk(int group) {
+            return groupOk[group];
+        }
+
+        public long getGroupBad(int group) {
+            return groupBad[group];
+        }
+
+        private Window minus(Window other) {
+            long[] ok = new long[groupOk.length];
+            long[] bad = new long[groupBad.length];
+            for (int g = 0; g < ok.length; g++) {
+                ok[g] = groupOk[g] - other.groupOk[g];
+                bad[g] = groupBad[g] - other.groupBad[g];
+            }
+            Window window = new Window(ok, bad);
+            window.okBatches = okBatches - other.okBatches;
+            window.badBatches = badBatches - other.badBatches;
+            window.okReadings = okReadings - other.okReadings;
+            window.badReadings = badReadings - other.badReadings;
+            // late datagrams can fill gaps of a previous window
+            window.lost = Math.max(0, lost - other.lost);
+            window.received = received - other.received;
+            return window;
+        }
+
+        /**
+         * Sums windows, per group counts are dropped
+         *
+         * @param windows
+         * @return
+         */
+        public static Window sum(Seq<Window> windows) {
+            Window sum = new Window(new long[0], new long[0]);
+            for (Window window : windows) {
+                sum.okBatches += window.okBatches;
+                sum.badBatches += window.badBatches;
+                sum.okReadings += window.okReadings;
+                sum.badReadings += window.badReadings;
+                sum.lost += window.lost;
+                sum.received += window.received;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package sigea.main;
+
+import io.vavr.control.Try;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CRC-32C (Castagnoli) of a buffer range. Uses java.util.zip.CRC32C, which the
+ * jvm turns into a hardware crc instruction, when running on Java 9 or later
+ * and falls back to a table driven implementation on Java 8.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+final class Crc32c {
+
+    // reflected Castagnoli polynomial
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[] TABLE = new int[256];
+    // null on Java 8
+    private static final MethodHandle INTRINSIC_CONSTRUCTOR;
+    private static final MethodHandle INTRINSIC_UPDATE;
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc >>> 1) ^ (POLYNOMIAL & -(crc & 1));
+            }
+            TABLE[i] = crc;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Try<Class<?>> intrinsic = Try.of(() -> Class.forName("java.util.zip.CRC32C"));
+        INTRINSIC_CONSTRUCTOR = intrinsic
+                .mapTry(c -> lookup.findConstructor(c, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Checksum.class)))
+                .getOrNull();
+        INTRINSIC_UPDATE = intrinsic
+                .mapTry(c -> lookup.findVirtual(c, "update", MethodType.methodType(void.class, ByteBuffer.class))
+                .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class)))
+                .getOrNull();
+        log.debug("CRC32C uses the {} implementation", INTRINSIC_UPDATE != null ? "jdk" : "table");
+    }
+
+    private Crc32c() {
+    }
+
+    /**
+     *
+     * @param buf
+     * @param from - first byte, absolute
+     * @param to - first byte past the range, absolute
+     * @return the crc as an unsigned int
+     */
+    static int compute(ByteBuffer buf, int from, int to) {
+        if (INTRINSIC_UPDATE != null) {
+            ByteBuffer range = buf.duplicate();
+            range.limit(to).position(from);
+            try {
+                Checksum crc = (Checksum) INTRINSIC_CONSTRUCTOR.invokeExact();
+                INTRINSIC_UPDATE.invokeExact(crc, range);
+                return (int) crc.getValue();
+            } catch (Throwable ex) {
+                throw new IllegalStateException("CRC32C failed", ex);
+            }
+        }
+        int crc = ~0;
+        for (int i = from; i < to; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buf.get(i)) & 0xFF];
+        }
+        return ~crc;
+    }
+}
@@ -10,12 +10,23 @@ import static io.vavr.API.Case;
 import static io.vavr.API.Match;
 import static io.vavr.Predicates.isIn;
 
+import java.nio.ByteOrder;
+
 /**
  *
  * @author Pasquale Livecchi
  */
 public class DataPrimitiveUtil {
 
+    // compact type codes used by compiled decode plans
+    public static final byte TYPE_U1 = 0;
+    public static final byte TYPE_U8 = 1;
+    public static final byte TYPE_16 = 2;
+    public static final byte TYPE_32 = 3;
+    public static final byte TYPE_64 = 4;
+    public static final byte TYPE_F32 = 5;
+    public static final byte TYPE_F64 = 6;
+
     public static int dataTypeBitSize(String dataType) {
         return Match(dataType).of(
                 Case($("U1"), (short) 1),
@@ -29,6 +40,60 @@ public class DataPrimitiveUtil {
         );
     }
 
+    /**
+     * Maps a data type name to the compact type code used by decode plans
+     *
+     * @param dataType
+     * @return
+     */
+    public static byte dataTypeCode(String dataType) {
+        switch (dataType) {
+            case "U1":
+                return TYPE_U1;
+            case "U8":
+                return TYPE_U8;
+            case "U16":
+            case "S16":
+                return TYPE_16;
+            case "U32":
+            case "S32":
+                return TYPE_32;
+            case "U64":
+            case "S64":
+                return TYPE_64;
+            case "F32":
+                return TYPE_F32;
+            case "F64":
+                return TYPE_F64;
+            default:
+                throw new RuntimeException("Unsupported Data Type");
+        }
+    }
+
+    /**
+     * Parses a byte order setting, BIG_ENDIAN (or BIG) and LITTLE_ENDIAN (or
+     * LITTLE)
+     *
+     * @param setting
+     * @param fallback - used when the setting is missing or not recognized
+     * @return
+     */
+    public static ByteOrder byteOrder(String setting, ByteOrder fallback) {
+        if (setting == null) {
+            return fallback;
+        }
+        switch (setting.trim().toUpperCase()) {
+            case "BIG":
+            case "BIG_ENDIAN":
+                return ByteOrder.BIG_ENDIAN;
+            case "LITTLE":
+            case "LITTLE_ENDIAN":
+                return ByteOrder.LITTLE_ENDIAN;
+            default:
+                return fallback;
+        }
+    }
+
     public static void convertValToPrim(String dataType, double val) {
         Match(dataType).of(
                 Case($(isIn("U1", "U8")), (byte) val),
@@ -0,0 +1,171 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import sigea.entities.UdpDatagram;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rebuilds the frames of one connection from their fragment datagrams (see
+ * FrameFragments) in buffers leased from a frame pool. Fragments may arrive
+ * in any order and frames may interleave. A frame that is not complete within
+ * the timeout is dropped, as is the oldest frame once too many are pending.
+ *
+ * Fragments are handed in one at a time, expiry can also be driven from a
+ * timer on another thread so frames time out when traffic stops.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+public class FrameAssembler {
+
+    // frames being rebuilt at once, a slow frame is dropped past this
+    private static final int MAX_PENDING = 8;
+
+    private final ByteBufferPool framePool;
+    private final long timeoutMs;
+    // by frame id, in order of their first fragment
+    private final Map<Integer, PendingFrame> pending = new LinkedHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private long expiredAt;
+
+    /**
+     *
+     * @param framePool - buffers as large as the largest expected frame
+     * @param timeoutMs
+     */
+    public FrameAssembler(ByteBufferPool framePool, long timeoutMs) {
+        this.framePool = framePool;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Copies the fragment into its frame and releases it
+     *
+     * @param fragment
+     * @return the frame once its last fragment arrived, otherwise null
+     */
+    public synchronized UdpDatagram accept(UdpDatagram fragment) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - expiredAt >= timeoutMs / 2) {
+                expire(now);
+            }
+            return add(fragment.getDatagram(), fragment, now);
+        } finally {
+            fragment.release();
+        }
+    }
+
+    /**
+     * Frames dropped so far, incomplete or malformed
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     *
+     * @return how often expire should run to time frames out
+     */
+    public long getExpiryPeriodMs() {
+        return Math.max(1, timeoutMs / 2);
+    }
+
+    private UdpDatagram add(ByteBuffer buf, UdpDatagram fragment, long now) {
+        if (buf.limit() < FrameFragments.HEADER_BYTES) {
+            dropped.increment();
+            return null;
+        }
+        int frameId = buf.getInt(FrameFragments.FRAME_ID);
+        int index = Short.toUnsignedInt(buf.getShort(FrameFragments.INDEX));
+        int count = Short.toUnsignedInt(buf.getShort(FrameFragments.COUNT));
+        int sliceOffset = buf.getInt(FrameFragments.SLICE_OFFSET);
+        int frameLength = buf.getInt(FrameFragments.FRAME_LENGTH);
+        int sliceLength = buf.limit() - FrameFragments.HEADER_BYTES;
+        if (index >= count || frameLength > framePool.getBufferSize()
+                // compared without adding so a hostile offset cannot overflow
+                || sliceOffset < 0 || sliceOffset > frameLength - sliceLength) {
+            log.debug("Malformed fragment {} of frame {}", index, frameId);
+            dropped.increment();
+            return null;
+        }
+        PendingFrame frame = pending.get(frameId);
+        if (frame == null) {
+            if (pending.size() >= MAX_PENDING) {
+                drop(pending.keySet().iterator().next());
+            }
+            frame = new PendingFrame(framePool.lease(), count, frameLength, now);
+            frame.buf.order(buf.order());
+            pending.put(frameId, frame);
+        } else if (frame.count != count || frame.frameLength != frameLength) {
+            // the id was reused by a new frame
+            drop(frameId);
+            return add(buf, fragment, now);
+        }
+        if (!frame.received.get(index)) {
+            ByteBuffer slice = buf.duplicate();
+            slice.position(FrameFragments.HEADER_BYTES);
+            frame.buf.position(sliceOffset);
+            frame.buf.put(slice);
+            frame.received.set(index);
+            frame.receivedCount++;
+        }
+        if (frame.receivedCount < count) {
+            return null;
+        }
+        pending.remove(frameId);
+        frame.buf.limit(frameLength).position(0);
+        return new UdpDatagram(fragment.getSourceAddress(), frame.buf, framePool::release);
+    }
+
+    /**
+     * Drops the frames still incomplete after the timeout
+     *
+     * @param now - current time in millis
+     */
+    public synchronized void expire(long now) {
+        expiredAt = now;
+        Iterator<PendingFrame> frames = pending.values().iterator();
+        while (frames.hasNext()) {
+            PendingFrame frame = frames.next();
+            if (now - frame.startedAt > timeoutMs) {
+                frames.remove();
+                framePool.release(frame.buf);
+                dropped.increment();
+            }
+        }
+    }
+
+    private void drop(int frameId) {
+        PendingFrame frame = pending.remove(frameId);
+        if (frame != null) {
+            framePool.release(frame.buf);
+            dropped.increment();
+        }
+    }
+
+    private static class PendingFrame {
+
+        private final ByteBuffer buf;
+        private final BitSet received;
+        private final int count;
+        private final int frameLength;
+        private final long startedAt;
+        private int receivedCount;
+
+        PendingFrame(ByteBuffer buf, int count, int frameLength, long startedAt) {
+            this.buf = buf;
+            this.received = new BitSet(count);
+            this.count = count;
+            this.frameLength = frameLength;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package sigea.main;
+
+import io.vavr.collection.Seq;
+import io.vavr.control.Try;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import sigea.entities.Message;
+import sigea.entities.MsgConnection;
+
+/**
+ * Wire format of frames split over several datagrams. A frame is laid out
+ * exactly like an unfragmented datagram (fields, type and sequence headers and
+ * the integrity trailer) and every fragment datagram starts with this header,
+ * in the byte order of the connection, followed by a slice of the frame:
+ *
+ * <pre>
+ * 0  frame id (int)
+ * 4  fragment index (unsigned short)
+ * 6  fragment count (unsigned short)
+ * 8  offset of the slice in the frame (int)
+ * 12 frame length (int)
+ * </pre>
+ *
+ * @author Pasquale Livecchi
+ */
+public final class FrameFragments {
+
+    public static final int HEADER_BYTES = 16;
+    // frame bytes carried by each fragment the simulator sends
+    public static final int DEFAULT_PAYLOAD_BYTES = 8192;
+
+    static final int FRAME_ID = 0;
+    static final int INDEX = 4;
+    static final int COUNT = 6;
+    static final int SLICE_OFFSET = 8;
+    static final int FRAME_LENGTH = 12;
+
+    private FrameFragments() {
+    }
+
+    /**
+     * Length of a frame that holds every field of the connection along with
+     * its headers and integrity trailer
+     *
+     * @param msgConn
+     * @param msgs
+     * @return
+     */
+    public static int frameBytes(MsgConnection msgConn, Seq<Message> msgs) {
+        int highestBit = msgs
+                // a field of an unsupported data type takes no bytes
+                .map(m -> m.getByteOffset() * 8 + m.getBitOffset()
+                + Try.of(() -> DataPrimitiveUtil.dataTypeBitSize(m.getDataType())).getOrElse(0) * m.arrayLength())
+                .max().getOrElse(0);
+        int layoutBytes = (int) Math.ceil(highestBit / 8.0);
+        if (msgConn.getSequenceOffset() >= 0) {
+            layoutBytes = Math.max(layoutBytes, msgConn.getSequenceOffset() + 4);
+        }
+        if (msgConn.getTypeOffset() >= 0) {
+            layoutBytes = Math.max(layoutBytes, msgConn.getTypeOffset() + 1);
+        }
+        return layoutBytes + IntegrityCheck.fromSetting(msgConn.getIntegrity()).trailerBytes();
+    }
+
+    /**
+     * Splits a frame, from 0 to its limit, into fragment datagrams ready to
+     * be sent
+     *
+     * @param frame
+     * @param frameId
+     * @param payloadBytes - frame bytes per fragment
+     * @return
+     */
+    public static List<ByteBuffer> split(ByteBuffer frame, int frameId, int payloadBytes) {
+        int frameLength = frame.limit();
+        int count = Math.max(1, (frameLength + payloadBytes - 1) / payloadBytes);
+        List<ByteBuffer> fragments = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int sliceOffset = index * payloadBytes;
+            int sliceLength = Math.min(payloadBytes, frameLength - sliceOffset);
+            ByteBuffer fragment = ByteBuffer.allocate(HEADER_BYTES + sliceLength).order(frame.order());
+            fragment.putInt(frameId)
+                    .putShort((short) index)
+                    .putShort((short) count)
+                    .putInt(sliceOffset)
+                    .putInt(frameLength);
+            ByteBuffer slice = frame.duplicate();
+            slice.limit(sliceOffset + sliceLength).position(sliceOffset);
+            fragment.put(slice);
+            fragment.flip();
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+}
@@ -0,0 +1,132 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Integrity checks a datagram can carry in its last bytes, shared by the
+ * acquisition and the simulator. The check covers every byte before the
+ * trailer and the trailer is written in the byte order of the buffer.
+ *
+ * @author Pasquale Livecchi
+ */
+public enum IntegrityCheck {
+    // 16 bit sum of the unsigned bytes, the original check
+    SUM16(2) {
+        @Override
+        public long compute(ByteBuffer buf, int from, int to) {
+            long sum = 0;
+            int i = from;
+            // add up the 8 bytes of a long at a time, the byte order does not change a sum
+            for (; i + 8 <= to; i += 8) {
+                long word = buf.getLong(i);
+                long pairs = (word & BYTE_LANES) + ((word >>> 8) & BYTE_LANES);
+                sum += (pairs * SHORT_LANE_SUM) >>> 48;
+            }
+            for (; i < to; i++) {
+                sum += buf.get(i) & 0xFF;
+            }
+            return sum & 0xFFFF;
+        }
+    },
+    FLETCHER16(2) {
+        @Override
+        public long compute(ByteBuffer buf, int from, int to) {
+            int sum1 = 0, sum2 = 0;
+            for (int block = from; block < to; block += FLETCHER_BLOCK) {
+                // the modulo is deferred to the end of a block since the sums cannot overflow within one
+                int end = Math.min(to, block + FLETCHER_BLOCK);
+                for (int i = block; i < end; i++) {
+                    sum1 += buf.get(i) & 0xFF;
+                    sum2 += sum1;
+                }
+                sum1 %= 255;
+                sum2 %= 255;
+            }
+            return (sum2 << 8) | sum1;
+        }
+    },
+    CRC32C(4) {
+        @Override
+        public long compute(ByteBuffer buf, int from, int to) {
+            return Integer.toUnsignedLong(Crc32c.compute(buf, from, to));
+        }
+    };
+
+    private static final long BYTE_LANES = 0x00FF00FF00FF00FFL;
+    private static final long SHORT_LANE_SUM = 0x0001000100010001L;
+    private static final int FLETCHER_BLOCK = 2048;
+
+    private final int trailerBytes;
+
+    private IntegrityCheck(int trailerBytes) {
+        this.trailerBytes = trailerBytes;
+    }
+
+    public int trailerBytes() {
+        return trailerBytes;
+    }
+
+    /**
+     *
+     * @param buf
+     * @param from - first byte, absolute
+     * @param to - first byte past the range, absolute
+     * @return the check value in the low trailerBytes bytes
+     */
+    public abstract long compute(ByteBuffer buf, int from, int to);
+
+    /**
+     * Checks the trailer at the end of the buffer against every byte up to
+     * the limit before it
+     *
+     * @param buf
+     * @return whether or not the check matches
+     */
+    public boolean verify(ByteBuffer buf) {
+        int len = buf.limit() - trailerBytes;
+        if (len < 0) {
+            return false;
+        }
+        return compute(buf, 0, len) == readTrailer(buf, len);
+    }
+
+    /**
+     * Writes the check of the first len bytes right after them
+     *
+     * @param buf
+     * @param len
+     */
+    public void sign(ByteBuffer buf, int len) {
+        long check = compute(buf, 0, len);
+        if (trailerBytes == 2) {
+            buf.putShort(len, (short) check);
+        } else {
+            buf.putInt(len, (int) check);
+        }
+    }
+
+    private long readTrailer(ByteBuffer buf, int at) {
+        if (trailerBytes == 2) {
+            return Short.toUnsignedLong(buf.getShort(at));
+        }
+        return Integer.toUnsignedLong(buf.getInt(at));
+    }
+
+    /**
+     * Parses a config value, falling back to SUM16 when it is missing or not
+     * recognized
+     *
+     * @param value
+     * @return
+     */
+    public static IntegrityCheck fromSetting(String value) {
+        if (value != null) {
+            for (IntegrityCheck check : values()) {
+                if (check.name().equalsIgnoreCase(value.trim())) {
+                    return check;
+                }
+            }
+        }
+        return SUM16;
+    }
+}
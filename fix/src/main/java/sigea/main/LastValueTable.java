@@ -0,0 +1,99 @@
+package sigea.main;
+
+import java.util.BitSet;
+import java.util.function.IntFunction;
+import sigea.entities.BatchOfMsgReadings;
+
+/**
+ * Last reading of every sensor by sensor id, with the sensors whose value or
+ * quality changed since the changes were last taken. Used by a single thread.
+ *
+ * @author Pasquale Livecchi
+ */
+public class LastValueTable {
+
+    private final IntFunction<String> keyLookup;
+    private final double[] values;
+    private final long[] times;
+    private final byte[] qualities;
+    private final BitSet seen;
+    private final BitSet changed;
+
+    /**
+     *
+     * @param size - number of sensor ids
+     * @param keyLookup
+     */
+    public LastValueTable(int size, IntFunction<String> keyLookup) {
+        this.keyLookup = keyLookup;
+        this.values = new double[size];
+        this.times = new long[size];
+        this.qualities = new byte[size];
+        this.seen = new BitSet(size);
+        this.changed = new BitSet(size);
+    }
+
+    /**
+     * Records the readings of a batch, readings of unknown ids are ignored
+     *
+     * @param batch
+     */
+    public void apply(BatchOfMsgReadings batch) {
+        int[] sensorIds = batch.getSensorIds();
+        for (int i = 0; i < batch.size(); i++) {
+            int id = sensorIds[i];
+            if (id < 0 || id >= values.length) {
+                continue;
+            }
+            double value = batch.getValues()[i];
+            byte quality = batch.getQualities()[i];
+            // compare handles NaN
+            if (!seen.get(id) || Double.compare(values[id], value) != 0 || qualities[id] != quality) {
+                seen.set(id);
+                changed.set(id);
+                values[id] = value;
+                qualities[id] = quality;
+            }
+            times[id] = batch.getTimes()[i];
+        }
+    }
+
+    /**
+     * Takes the changes
+     *
+     * @return the last reading of every sensor changed since the previous
+     * call, or since the last snapshot
+     */
+    public BatchOfMsgReadings changes() {
+        BatchOfMsgReadings batch = collect(changed);
+        changed.clear();
+        return batch;
+    }
+
+    /**
+     * Takes a snapshot, which also takes the changes
+     *
+     * @return the last reading of every sensor that has one
+     */
+    public BatchOfMsgReadings snapshot() {
+        changed.clear();
+        return peekSnapshot();
+    }
+
+    /**
+     *
+     * @return the last reading of every sensor that has one, leaving the
+     * changes for the next call to changes
+     */
+    public BatchOfMsgReadings peekSnapshot() {
+        return collect(seen);
+    }
+
+    private BatchOfMsgReadings collect(BitSet ids) {
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(ids.cardinality(), keyLookup);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            batch.add(id, values[id], times[id], qualities[id]);
+        }
+        return batch;
+    }
+}
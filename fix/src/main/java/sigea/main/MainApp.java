@@ -1,5 +1,6 @@
 package sigea.main;
 
+import sigea.entities.IngestMode;
 import sigea.entities.Message;
 import sigea.entities.MsgConfig;
 import sigea.entities.MsgConnection;
@@ -7,6 +8,8 @@ import com.opencsv.bean.CsvToBeanBuilder;
 import io.reactivex.Scheduler;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
+import io.vavr.Tuple;
+import io.vavr.Tuple3;
 import io.vavr.control.Try;
 import java.io.IOException;
 import java.io.Reader;
@@ -49,6 +52,9 @@ public class MainApp {
     @Inject
     private Event<MsgConfig> msgConfigEvent;
     private String sigeaHost;
+    private IngestMode ingestMode = IngestMode.BLOCKING;
+    private int selectorThreads = 1;
+    private long healthWindowSeconds = 30;
 
     private static final Lock LOCK = new ReentrantLock();
     private static final Condition RUNCONDITION = LOCK.newCondition();
@@ -110,6 +116,9 @@ public class MainApp {
     private void createDefaultSettingsFile() {
         Properties settings = new Properties();
         settings.setProperty("sigea.host", "localhost");
+        settings.setProperty("sigea.ingest.mode", IngestMode.BLOCKING.name());
+        settings.setProperty("sigea.ingest.selectors", "1");
+        settings.setProperty("sigea.health.window.seconds", "30");
         try (Writer w = Files.newBufferedWriter(SETTINGS)) {
             settings.store(w, "Master Msg Settings");
         } catch (IOException ex) {
@@ -128,6 +137,15 @@ public class MainApp {
             settings.setProperty("sigea.host", "localhost");
         }
         sigeaHost = settings.getProperty("sigea.host");
+        ingestMode = IngestMode.fromSetting(settings.getProperty("sigea.ingest.mode"));
+        selectorThreads = Try.of(() -> Integer.parseInt(settings.getProperty("sigea.ingest.selectors", "1").trim()))
+                .getOrElse(1);
+        healthWindowSeconds = Try.of(() -> Long.parseLong(settings.getProperty("sigea.health.window.seconds", "30").trim()))
+                .getOrElse(30L);
+    }
+
+    private Tuple3<IngestMode, Integer, Long> ingestSettings() {
+        return Tuple.of(ingestMode, selectorThreads, healthWindowSeconds);
     }
 
     public void initSigeaMsgModule(@Observes @Initialized(ApplicationScoped.class) Object init) {
@@ -137,7 +155,12 @@ public class MainApp {
         filewatcher = new ConfigFileWatcher(DIRECTORY, computation())
                 .createFileEventStream().subscribe(evt_path -> {
                     if (evt_path._2.equals(SETTINGS)) {
+                        Tuple3<IngestMode, Integer, Long> previous = ingestSettings();
                         lazyLoadSettings();
+                        // ingest settings only take effect when acquisition is reloaded
+                        if (!previous.equals(ingestSettings())) {
+                            loadMsgConfiguration(MSG_CONFIG);
+                        }
                     } else if (evt_path._2.equals(MSG_CONFIG)) {
                         loadMsgConfiguration(MSG_CONFIG);
                     }
@@ -162,6 +185,9 @@ public class MainApp {
             log.info("Attempting to load new connection config");
             try {
                 MsgConfig msgConfig = new MsgConfig();
+                msgConfig.setIngestMode(ingestMode);
+                msgConfig.setSelectorThreads(selectorThreads);
+                msgConfig.setHealthWindowSeconds(healthWindowSeconds);
                 try (Reader r = Files.newBufferedReader(file)) {
                     List<MsgConnection> conns = new CsvToBeanBuilder(r).withType(MsgConnection.class).build().parse();
                     msgConfig.setMsgConnections(conns);
@@ -2,7 +2,6 @@ package sigea.main;
 
 import sigea.entities.BatchOfMsgReadings;
 import sigea.entities.HealthReading;
-import sigea.entities.MsgQuality;
 import sigea.entities.HealthStatus;
 import io.reactivex.Observable;
 import io.reactivex.ObservableTransformer;
@@ -11,17 +10,14 @@ import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.disposables.Disposables;
 import io.reactivex.disposables.SerialDisposable;
-import io.vavr.Tuple;
-import io.vavr.Tuple2;
 import io.vavr.collection.Seq;
 import io.vavr.collection.Stream;
 import io.vavr.control.Option;
-import java.util.EnumSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
@@ -32,8 +28,10 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class MsgAcquisition {
 
-// qualities that are not bad or uncertain 
-    private static final EnumSet<MsgQuality> OK_QUALITIES = EnumSet.of(MsgQuality.GOOD, MsgQuality.NONE);
+// share of upstream datagrams lost in a health window that degrades the health
+    private static final double LOSS_THRESHOLD = 0.01;
+// health window used when the config does not set one
+    protected static final long DEFAULT_HEALTH_WINDOW_SECONDS = 30;
 
     @Inject
     private Event<BatchOfMsgReadings> sendData;
@@ -54,63 +52,71 @@ public abstract class MsgAcquisition {
         public MsgReadingSubscription() {
         }
 
-        // sets up the event streams if readings contains a value
-        public synchronized void updateEventStream(Option<Seq<Observable<BatchOfMsgReadings>>> readings) {
-            if (readings.isDefined()) {
-                eventTasks.set(createCombinedSubscription(readings.get()));
+        // sets up the event streams if interfaces contains a value
+        public synchronized void updateEventStream(Option<Seq<ObservableMsgInterface>> msgInterfaces, long healthWindowSeconds, StaleSensors staleSensors) {
+            if (msgInterfaces.isDefined()) {
+                eventTasks.set(createCombinedSubscription(msgInterfaces.get(), healthWindowSeconds, staleSensors));
             } else {
                 eventTasks.set(Disposables.empty());
             }
         }
 
-        // bind all reading streams and health stream to a single subscription
-        protected CompositeDisposable createCombinedSubscription(Seq<Observable<BatchOfMsgReadings>> batchOfMsgReadings) {
-            // setup health recording
-            Disposable health = Observable.merge(batchOfMsgReadings)
-                    .compose(analyzeBatchHealth())
+        // bind all reading streams, health and stale timers to a single subscription,
+        // the interfaces record sensor updates and health counts themselves before readings are filtered out
+        protected CompositeDisposable createCombinedSubscription(Seq<ObservableMsgInterface> msgInterfaces, long healthWindowSeconds, StaleSensors staleSensors) {
+            Seq<ConnectionHealth> healths = msgInterfaces.map(ObservableMsgInterface::health);
+            // setup health recording, the interfaces count their batches as they are decoded
+            Disposable health = Observable.interval(healthWindowSeconds, TimeUnit.SECONDS, computation)
+                    .doOnNext(i -> msgInterfaces.forEach(ObservableMsgInterface::reportDrops))
+                    .concatMapIterable(i -> analyzeHealth(healths, computation.now(TimeUnit.MILLISECONDS)))
                     .doOnError(ex -> log.error("Error in health stream", ex))
                     .retry()
                     // add startup and shutdown logging
                     .doOnSubscribe(s -> log.info("Starting Up Sigea Msg Acquisition"))
                     .doOnDispose(() -> log.info("Shutting Down Sigea Msg Acquisition"))
                     .subscribe(sendHealth::fire);
-            Seq<Disposable> subs = batchOfMsgReadings
-                    .map(data -> data.subscribe(sendData::fire));
+            Seq<Disposable> subs = msgInterfaces.map(iface -> iface.asObservable()
+                    .subscribe(sendData::fire));
+            if (staleSensors.isTracking()) {
+                // stale readings go out like any other batch
+                subs = subs.prepend(Observable.interval(StaleSensors.TICK_MS, TimeUnit.MILLISECONDS, computation)
+                        .map(i -> staleSensors.advance(computation.now(TimeUnit.MILLISECONDS)))
+                        .filter(BatchOfMsgReadings::hasData)
+                        .subscribe(sendData::fire));
+            }
 
             return new CompositeDisposable(subs.prepend(health).toArray());
         }
 
-        // returns true only if there is at least one value that does not
-        // have bad quality
-        private boolean isOkQuality(BatchOfMsgReadings bomr) {
-            if (bomr == null) {
-                return false;
+        // degrades an operational status when too many upstream datagrams were lost
+        private HealthStatus withPacketLoss(HealthStatus code, ConnectionHealth.Window window) {
+            if (code == HealthStatus.OPERATIONAL && window.getLost() > LOSS_THRESHOLD * window.getExpected()) {
+                return HealthStatus.PARTIALLY_OPERATIONAL;
             }
-            return bomr.getMsgReadings().stream()
-                    .map(r -> MsgQuality.fromQualityByte(r.getQuality()))
-                    .anyMatch(OK_QUALITIES::contains);
+            return code;
         }
 
-        // split a stream into two based on a predicate
-        private <T> Tuple2<Observable<T>, Observable<T>> splitStreamFilter(Observable<T> stream, Predicate<T> predicate) {
-            return Tuple.of(stream.filter(predicate::test), stream.filter(predicate.negate()::test));
+        private void addPacketLossMsg(HealthReading health, ConnectionHealth.Window window) {
+            if (window.getLost() > 0) {
+                health.setMessage(String.format("%s, lost %d of %d datagrams", health.getMessage(), window.getLost(), window.getExpected()));
+            }
         }
 
-        private void addHealthMsg(HealthReading health) {
+        private void addHealthMsg(HealthReading health, String subject) {
             switch (health.getCode()) {
                 case NOT_OPERATIONAL:
                 case PARTIALLY_OPERATIONAL:
-                    health.setMessage("Sigea Msg Acquisition is not receiving all expected data");
+                    health.setMessage(subject + " is not receiving all expected data");
                     break;
                 case OPERATIONAL:
-                    health.setMessage("Sigea Msg Acquisition is operating normally");
+                    health.setMessage(subject + " is operating normally");
                     break;
                 default:
                     throw new RuntimeException("Invalid Msg health code");
             }
         }
 
-        // creates a status based on good vs bad readings
+        // creates a status based on good vs bad counts
         private HealthStatus calculateStatusCode(long good, long bad) {
             if (good > 0) {
                 if (bad == 0) {
@@ -123,32 +129,34 @@ public abstract class MsgAcquisition {
             }
         }
 
-        // this analyzes a BatchOfMsgReadings stream in 30 second increments
-        // and produces a HealthReading based on the readings encountered
-        private ObservableTransformer<BatchOfMsgReadings, HealthReading> analyzeBatchHealth() {
-            return readings -> {
-                return splitStreamFilter(readings, this::isOkQuality)
-                        // create a 30 second windowed observable for counting
-                        .map1(obs -> obs.window(30, TimeUnit.SECONDS, computation))
-                        .map2(obs -> obs.window(30, TimeUnit.SECONDS, computation))
-                        .apply((goodwindows, badwindows) -> {
-                            // 30 second windows get zipped together
-                            return goodwindows.zipWith(badwindows,
-                                    // and their counts get analyzed by status(good, bad)
-                                    (good, bad) -> good.count().zipWith(bad.count(), this::calculateStatusCode))
-                                    // flatten out the stream
-                                    // then add timestamp to build HealthReading
-                                    .flatMap(obs -> obs.toObservable())
-                                    .timestamp(computation)
-                                    .map(code -> {
-                                        HealthReading health = new HealthReading();
-                                        health.setCode(code.value());
-                                        health.setTime(code.time());
-                                        addHealthMsg(health);
-                                        return health;
-                                    });
-                        });
-            };
+        // reads out the counters of a window, an overall reading first then
+        // one per connection followed by its sensor groups
+        private List<HealthReading> analyzeHealth(Seq<ConnectionHealth> healths, long time) {
+            Seq<ConnectionHealth.Window> windows = healths.map(ConnectionHealth::nextWindow);
+            List<HealthReading> readings = new ArrayList<>();
+            readings.add(healthReading(null, "Sigea Msg Acquisition", ConnectionHealth.Window.sum(windows), time));
+            healths.zip(windows).forEach(health_window -> {
+                ConnectionHealth health = health_window._1;
+                ConnectionHealth.Window window = health_window._2;
+                readings.add(healthReading(health.getName(), "Connection " + health.getName(), window, time));
+                for (int g = 0; g < health.groupCount(); g++) {
+                    HealthReading group = new HealthReading(health.getName() + "/" + health.groupName(g));
+                    group.setCode(calculateStatusCode(window.getGroupOk(g), window.getGroupBad(g)));
+                    group.setTime(time);
+                    addHealthMsg(group, "Sensor group " + health.groupName(g) + " of " + health.getName());
+                    readings.add(group);
+                }
+            });
+            return readings;
+        }
+
+        private HealthReading healthReading(String component, String subject, ConnectionHealth.Window window, long time) {
+            HealthReading health = new HealthReading(component);
+            health.setCode(withPacketLoss(calculateStatusCode(window.getOkBatches(), window.getBadBatches()), window));
+            health.setTime(time);
+            addHealthMsg(health, subject);
+            addPacketLossMsg(health, window);
+            return health;
         }
     }
 // when an error occurs emit the specified value before the error
@@ -163,6 +171,13 @@ public abstract class MsgAcquisition {
     protected interface ObservableMsgInterface {
 
         Observable<BatchOfMsgReadings> asObservable();
+
+        // counters of the batches of the interface, always the same instance, every
+        // decoded batch is counted including those held back by a deadband
+        ConnectionHealth health();
+
+        // logs what was dropped since the previous call, called from the health timer
+        void reportDrops();
     }
 
     protected <M, R> void loadBatchOfMsgReadings(
@@ -170,15 +185,25 @@ public abstract class MsgAcquisition {
             MsgReadingSubscription msgSub,
             Function<M, R> configMapper,
             BiFunction<R, Seq<M>, ObservableMsgInterface> combineConfigWithSensors) {
-        Option<Seq<Observable<BatchOfMsgReadings>>> obsReadingBatch = Option.of(messages)
+        loadBatchOfMsgReadings(messages, msgSub, configMapper, combineConfigWithSensors, DEFAULT_HEALTH_WINDOW_SECONDS,
+                new StaleSensors(Stream.empty(), id -> null));
+    }
+
+    protected <M, R> void loadBatchOfMsgReadings(
+            List<M> messages,
+            MsgReadingSubscription msgSub,
+            Function<M, R> configMapper,
+            BiFunction<R, Seq<M>, ObservableMsgInterface> combineConfigWithSensors,
+            long healthWindowSeconds,
+            StaleSensors staleSensors) {
+        Option<Seq<ObservableMsgInterface>> msgInterfaces = Option.of(messages)
                 .filter(msgs -> !msgs.isEmpty())
                 .map(filteredMsgs -> {
                     return Stream.ofAll(filteredMsgs)
                             .groupBy(msg -> configMapper.apply(msg))
-                            .map(tup -> tup.apply(combineConfigWithSensors)
-                            .asObservable())
+                            .map(tup -> tup.apply(combineConfigWithSensors))
                             .toList();
                 });
-        msgSub.updateEventStream(obsReadingBatch);
+        msgSub.updateEventStream(msgInterfaces, Math.max(1, healthWindowSeconds), staleSensors);
     }
 }
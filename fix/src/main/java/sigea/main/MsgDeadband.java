@@ -0,0 +1,87 @@
+package sigea.main;
+
+import io.vavr.collection.Seq;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+
+/**
+ * Change only filter over the batches of one connection. A reading of a field
+ * with a deadband is kept when its value moved past the deadband since the
+ * last kept reading, when its quality changed, or when the heartbeat ran out.
+ * The last kept values are held in primitive arrays indexed like the decode
+ * plan.
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgDeadband {
+
+    private final double[] deadbands;
+    private final double[] lastValues;
+    private final byte[] lastQualities;
+    private final long[] lastKept;
+    private final long heartbeatMs;
+
+    /**
+     *
+     * @param msgs - in decode plan order
+     * @param heartbeatMs
+     */
+    public MsgDeadband(Seq<Message> msgs, long heartbeatMs) {
+        int size = msgs.map(Message::arrayLength).sum().intValue();
+        this.deadbands = new double[size];
+        this.lastValues = new double[size];
+        this.lastQualities = new byte[size];
+        this.lastKept = new long[size];
+        this.heartbeatMs = heartbeatMs;
+        int slot = 0;
+        for (Message msg : msgs) {
+            // every element of an array shares the deadband of its field
+            for (int k = 0; k < msg.arrayLength(); k++, slot++) {
+                deadbands[slot] = msg.getDeadband();
+            }
+        }
+    }
+
+    public static boolean isUsedBy(Seq<Message> msgs) {
+        return msgs.exists(msg -> msg.getDeadband() >= 0);
+    }
+
+    /**
+     * Drops the unchanged readings of a batch decoded by the plan
+     *
+     * @param batch
+     * @param now - current time in millis
+     * @return false when every reading of a non empty batch was dropped
+     */
+    public boolean retainChanged(BatchOfMsgReadings batch, long now) {
+        if (batch.size() != deadbands.length) {
+            // empty batches mark errors and are passed on
+            return true;
+        }
+        double[] values = batch.getValues();
+        byte[] qualities = batch.getQualities();
+        batch.retainIf(i -> changed(i, values[i], qualities[i], now));
+        return batch.hasData();
+    }
+
+    private boolean changed(int slot, double value, byte quality, long now) {
+        double deadband = deadbands[slot];
+        if (deadband >= 0
+                && quality == lastQualities[slot]
+                && now - lastKept[slot] < heartbeatMs
+                && withinDeadband(lastValues[slot], value, deadband)) {
+            return false;
+        }
+        lastValues[slot] = value;
+        lastQualities[slot] = quality;
+        lastKept[slot] = now;
+        return true;
+    }
+
+    private static boolean withinDeadband(double last, double value, double deadband) {
+        if (Double.isNaN(last) || Double.isNaN(value)) {
+            return Double.isNaN(last) && Double.isNaN(value);
+        }
+        return Math.abs(value - last) <= deadband;
+    }
+}
@@ -0,0 +1,509 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgQuality;
+import io.vavr.collection.Seq;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A message layout compiled once on config load into flat primitive arrays so
+ * that decoding a datagram is a single loop over offsets and type codes,
+ * without any per field String dispatch or allocation.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+public class MsgDecodePlan {
+
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte BAD = MsgQuality.BAD.byteValue();
+    private static final byte OUT_OF_RANGE = MsgQuality.OUT_OF_RANGE.byteValue();
+    // plans with at least this many slots are decoded on the fork join pool
+    static final int PARALLEL_THRESHOLD = 16_384;
+    // slots decoded by one fork join task
+    private static final int FIELDS_PER_TASK = 4096;
+    // type code flag of fields whose byte order differs from the plan's
+    private static final byte SWAPPED = 8;
+    private static final byte SWAPPED_16 = DataPrimitiveUtil.TYPE_16 | SWAPPED;
+    private static final byte SWAPPED_32 = DataPrimitiveUtil.TYPE_32 | SWAPPED;
+    private static final byte SWAPPED_64 = DataPrimitiveUtil.TYPE_64 | SWAPPED;
+    private static final byte SWAPPED_F32 = DataPrimitiveUtil.TYPE_F32 | SWAPPED;
+    private static final byte SWAPPED_F64 = DataPrimitiveUtil.TYPE_F64 | SWAPPED;
+    // type code of bit fields read from a shared word instead of one at a time
+    private static final byte PACKED_U1 = DataPrimitiveUtil.TYPE_U1 | 16;
+    // type code of fields of an unsupported data type, they take no bytes and read as BAD
+    private static final byte UNSUPPORTED = 7;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // message of every slot, an array field has a slot per element
+    private final Message[] msgs;
+    // byte order the buffer is read in, other fields are byte swapped
+    private final ByteOrder order;
+    private final String[] keys;
+    private final int[] sensorIds;
+    // the rest is per field
+    private final byte[] typeCodes;
+    private final int[] byteOffsets;
+    // first byte past the field, used to bounds check without exceptions
+    private final int[] byteEnds;
+    // only used by U1 fields
+    private final int[] bitOffsets;
+    private final int[] bitSizes;
+    // valid range of the field, unbounded when the config range is empty
+    private final double[] rangeLows;
+    private final double[] rangeHighs;
+    // number of elements, 1 unless the field is an array
+    private final int[] dims;
+    // slot of the first element
+    private final int[] slotStarts;
+    // byte offset of every 8 byte word holding bit fields
+    private final int[] wordOffsets;
+    // first byte past the last bit field of a word
+    private final int[] wordEnds;
+    // bit fields of word w are packedFields[wordStarts[w]] up to wordStarts[w + 1]
+    private final int[] wordStarts;
+    private final int[] packedFields;
+    // bit of the field in the word as read in the plan's order
+    private final long[] packedMasks;
+
+    private MsgDecodePlan(Message[] fields, ByteOrder order) {
+        int fieldCount = fields.length;
+        int slots = 0;
+        for (Message field : fields) {
+            slots += field.arrayLength();
+        }
+        this.order = order;
+        this.msgs = new Message[slots];
+        this.keys = new String[slots];
+        this.sensorIds = new int[slots];
+        this.typeCodes = new byte[fieldCount];
+        this.byteOffsets = new int[fieldCount];
+        this.byteEnds = new int[fieldCount];
+        this.bitOffsets = new int[fieldCount];
+        this.bitSizes = new int[fieldCount];
+        this.rangeLows = new double[fieldCount];
+        this.rangeHighs = new double[fieldCount];
+        this.dims = new int[fieldCount];
+        this.slotStarts = new int[fieldCount];
+        int slot = 0;
+        for (int f = 0; f < fieldCount; f++) {
+            Message msg = fields[f];
+            int dim = msg.arrayLength();
+            int bitSize = Try.of(() -> DataPrimitiveUtil.dataTypeBitSize(msg.getDataType())).getOrElse(0);
+            typeCodes[f] = Try.of(() -> DataPrimitiveUtil.dataTypeCode(msg.getDataType()))
+                    .onFailure(ex -> log.warn("{} has unsupported DATA_TYPE {} and always reads BAD", msg.uniqueKeyName(), msg.getDataType()))
+                    .getOrElse(UNSUPPORTED);
+            if (bitSize > 8 && DataPrimitiveUtil.byteOrder(msg.getByteOrder(), order) != order) {
+                typeCodes[f] |= SWAPPED;
+            }
+            byteOffsets[f] = msg.getByteOffset();
+            byteEnds[f] = bitSize < 8
+                    ? msg.getByteOffset() + (msg.getBitOffset() + bitSize * dim + 7) / 8
+                    : msg.getByteOffset() + bitSize / 8 * dim;
+            bitOffsets[f] = msg.getBitOffset();
+            bitSizes[f] = bitSize;
+            boolean ranged = msg.getRangeLow() < msg.getRangeHigh();
+            rangeLows[f] = ranged ? msg.getRangeLow() : Double.NEGATIVE_INFINITY;
+            rangeHighs[f] = ranged ? msg.getRangeHigh() : Double.POSITIVE_INFINITY;
+            dims[f] = dim;
+            slotStarts[f] = slot;
+            for (int k = 0; k < dim; k++, slot++) {
+                msgs[slot] = msg;
+                keys[slot] = msg.elementKeyName(k);
+                sensorIds[slot] = msg.getId() + k;
+            }
+        }
+        // scalar bit fields in bit order, a word starts at the first field not in the previous one
+        packedFields = IntStream.range(0, fieldCount)
+                .filter(f -> typeCodes[f] == DataPrimitiveUtil.TYPE_U1 && dims[f] == 1 && byteOffsets[f] >= 0)
+                .boxed()
+                .sorted(Comparator.comparingInt(f -> byteOffsets[f] * 8 + bitOffsets[f]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        packedMasks = new long[packedFields.length];
+        int[] offsets = new int[packedFields.length];
+        int[] ends = new int[packedFields.length];
+        int[] starts = new int[packedFields.length + 1];
+        int words = 0;
+        for (int k = 0; k < packedFields.length; k++) {
+            int f = packedFields[k];
+            int bit = byteOffsets[f] * 8 + bitOffsets[f];
+            if (words == 0 || bit / 8 >= offsets[words - 1] + Long.BYTES) {
+                offsets[words] = bit / 8;
+                starts[words++] = k;
+            }
+            int wordBit = bit - offsets[words - 1] * 8;
+            // bit 0 is the highest value bit of its byte
+            packedMasks[k] = order == ByteOrder.BIG_ENDIAN
+                    ? 1L << (63 - wordBit)
+                    : 1L << (wordBit / 8 * 8 + 7 - wordBit % 8);
+            ends[words - 1] = Math.max(ends[words - 1], byteEnds[f]);
+            typeCodes[f] = PACKED_U1;
+        }
+        starts[words] = packedFields.length;
+        wordOffsets = Arrays.copyOf(offsets, words);
+        wordEnds = Arrays.copyOf(ends, words);
+        wordStarts = Arrays.copyOf(starts, words + 1);
+    }
+
+    /**
+     * Compiles little endian messages into a decode plan
+     *
+     * @param msgs
+     * @return
+     */
+    public static MsgDecodePlan compile(Seq<Message> msgs) {
+        return compile(msgs, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Compiles the messages of a connection into a decode plan, message ids
+     * must already be assigned by the config key dictionary. Fields with a
+     * byte order of their own are byte swapped as they are read, and array
+     * fields (DIM above 1) are read in bulk into a slot per element. Bit
+     * fields sharing bytes are grouped into 8 byte words read with a single
+     * long read each. A RANGE_LOW below RANGE_HIGH enables the range check.
+     *
+     * @param msgs
+     * @param order - byte order of the connection
+     * @return
+     */
+    public static MsgDecodePlan compile(Seq<Message> msgs, ByteOrder order) {
+        return new MsgDecodePlan(msgs.toJavaList().toArray(new Message[0]), order);
+    }
+
+    public int size() {
+        return msgs.length;
+    }
+
+    public Message message(int index) {
+        return msgs[index];
+    }
+
+    public String key(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Decodes every field of the plan and appends them to the batch, the
+     * sensor id of a reading is the id of its message (and element)
+     *
+     * @param buf
+     * @param batch
+     * @param time - receive time shared by every reading of the datagram
+     */
+    public void decodeInto(ByteBuffer buf, BatchOfMsgReadings batch, long time) {
+        int start = appendTo(batch, time);
+        decode(buf, batch.getValues(), batch.getQualities(), start);
+    }
+
+    /**
+     * Appends a slot per field element to the batch with its sensor id and time set,
+     * the values and qualities are left to the caller
+     *
+     * @param batch
+     * @param time
+     * @return index of the slot of the first field
+     */
+    public int appendTo(BatchOfMsgReadings batch, long time) {
+        int start = batch.append(msgs.length);
+        System.arraycopy(sensorIds, 0, batch.getSensorIds(), start, msgs.length);
+        Arrays.fill(batch.getTimes(), start, start + msgs.length, time);
+        return start;
+    }
+
+    /**
+     * Decodes every field of the plan from the buffer. Fields that do not fit
+     * in the buffer are written as NaN with bad quality, so are NaN and
+     * infinite values, and values outside the range of their field are
+     * flagged out of range.
+     *
+     * @param buf - buffer with absolute offset 0 at the start of the layout
+     * @param values - output values, at least size() long
+     * @param qualities - output qualities, at least size() long
+     */
+    public void decode(ByteBuffer buf, double[] values, byte[] qualities) {
+        decode(buf, values, qualities, 0);
+    }
+
+    /**
+     * Decodes every field of the plan, slot i is written at out + i. Wide
+     * plans are split into contiguous field ranges decoded in parallel.
+     *
+     * @param buf
+     * @param values
+     * @param qualities
+     * @param out - first output slot
+     */
+    public void decode(ByteBuffer buf, double[] values, byte[] qualities, int out) {
+        if (buf.order() != order) {
+            buf = buf.duplicate().order(order);
+        }
+        decodeWords(buf, values, qualities, out);
+        if (msgs.length < PARALLEL_THRESHOLD) {
+            decode(buf, values, qualities, out, 0, typeCodes.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new DecodeTask(buf, values, qualities, out, 0, typeCodes.length));
+        }
+    }
+
+    private int slotEnd(int field) {
+        return field < slotStarts.length ? slotStarts[field] : msgs.length;
+    }
+
+    // each range writes its own slots of the shared output
+    private class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buf;
+        private final double[] values;
+        private final byte[] qualities;
+        private final int out;
+        private final int from;
+        private final int to;
+
+        DecodeTask(ByteBuffer buf, double[] values, byte[] qualities, int out, int from, int to) {
+            this.buf = buf;
+            this.values = values;
+            this.qualities = qualities;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || slotEnd(to) - slotStarts[from] <= FIELDS_PER_TASK) {
+                // a view of its own since buffers are not thread safe
+                decode(buf.duplicate().order(buf.order()), values, qualities, out, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(buf, values, qualities, out, from, middle),
+                    new DecodeTask(buf, values, qualities, out, middle, to));
+        }
+    }
+
+    private void decode(ByteBuffer buf, double[] values, byte[] qualities, int out, int from, int to) {
+        int limit = buf.limit();
+        for (int f = from; f < to; f++) {
+            int i = out + slotStarts[f];
+            int offset = byteOffsets[f];
+            if (offset < 0 || byteEnds[f] > limit) {
+                Arrays.fill(values, i, i + dims[f], Double.NaN);
+                Arrays.fill(qualities, i, i + dims[f], BAD);
+                continue;
+            }
+            if (dims[f] > 1) {
+                decodeArray(buf, f, values, qualities, i);
+                continue;
+            }
+            switch (typeCodes[f]) {
+                case PACKED_U1:
+                    // already read with its word
+                    continue;
+                case DataPrimitiveUtil.TYPE_U1:
+                    values[i] = bits(buf, offset * 8 + bitOffsets[f], bitSizes[f]);
+                    break;
+                case DataPrimitiveUtil.TYPE_U8:
+                    values[i] = buf.get(offset);
+                    break;
+                case DataPrimitiveUtil.TYPE_16:
+                    values[i] = buf.getShort(offset);
+                    break;
+                case DataPrimitiveUtil.TYPE_32:
+                    values[i] = buf.getInt(offset);
+                    break;
+                case DataPrimitiveUtil.TYPE_64:
+                    values[i] = buf.getLong(offset);
+                    break;
+                case DataPrimitiveUtil.TYPE_F32:
+                    values[i] = buf.getFloat(offset);
+                    break;
+                case DataPrimitiveUtil.TYPE_F64:
+                    values[i] = buf.getDouble(offset);
+                    break;
+                case SWAPPED_16:
+                    values[i] = Short.reverseBytes(buf.getShort(offset));
+                    break;
+                case SWAPPED_32:
+                    values[i] = Integer.reverseBytes(buf.getInt(offset));
+                    break;
+                case SWAPPED_64:
+                    values[i] = Long.reverseBytes(buf.getLong(offset));
+                    break;
+                case SWAPPED_F32:
+                    values[i] = Float.intBitsToFloat(Integer.reverseBytes(buf.getInt(offset)));
+                    break;
+                case SWAPPED_F64:
+                    values[i] = Double.longBitsToDouble(Long.reverseBytes(buf.getLong(offset)));
+                    break;
+                default:
+                    values[i] = Double.NaN;
+                    qualities[i] = BAD;
+                    continue;
+            }
+            qualities[i] = quality(f, values[i]);
+        }
+    }
+
+    // checked inline rather than through exceptions
+    private byte quality(int f, double value) {
+        if (value >= rangeLows[f] && value <= rangeHighs[f] && !Double.isInfinite(value)) {
+            return GOOD;
+        }
+        return Double.isNaN(value) || Double.isInfinite(value) ? BAD : OUT_OF_RANGE;
+    }
+
+    // one long read per word of bit fields, then a mask per field
+    private void decodeWords(ByteBuffer buf, double[] values, byte[] qualities, int out) {
+        int limit = buf.limit();
+        for (int w = 0; w < wordOffsets.length; w++) {
+            // a word running past the datagram is read from further back
+            int start = Math.min(wordOffsets[w], limit - Long.BYTES);
+            if (start < 0 || wordEnds[w] > limit) {
+                decodeBits(buf, values, qualities, out, w);
+                continue;
+            }
+            int shift = (wordOffsets[w] - start) * 8;
+            long word = order == ByteOrder.BIG_ENDIAN
+                    ? buf.getLong(start) << shift
+                    : buf.getLong(start) >>> shift;
+            for (int k = wordStarts[w]; k < wordStarts[w + 1]; k++) {
+                int f = packedFields[k];
+                int i = out + slotStarts[f];
+                values[i] = (word & packedMasks[k]) == 0 ? 0 : 1;
+                qualities[i] = quality(f, values[i]);
+            }
+        }
+    }
+
+    // bit at a time for the fields of a word that does not fit
+    private void decodeBits(ByteBuffer buf, double[] values, byte[] qualities, int out, int w) {
+        for (int k = wordStarts[w]; k < wordStarts[w + 1]; k++) {
+            int f = packedFields[k];
+            int i = out + slotStarts[f];
+            if (byteEnds[f] > buf.limit()) {
+                values[i] = Double.NaN;
+                qualities[i] = BAD;
+            } else {
+                values[i] = bits(buf, byteOffsets[f] * 8 + bitOffsets[f], bitSizes[f]);
+                qualities[i] = quality(f, values[i]);
+            }
+        }
+    }
+
+    // bulk reads the elements through a typed view of the field's byte order into a
+    // primitive scratch array, then widens them, instead of one dispatch per element
+    private void decodeArray(ByteBuffer buf, int f, double[] values, byte[] qualities, int out) {
+        int dim = dims[f];
+        int offset = byteOffsets[f];
+        ByteBuffer view = buf.duplicate();
+        view.limit(byteEnds[f]).position(offset);
+        view = view.slice().order((typeCodes[f] & SWAPPED) == 0 ? order : swap(order));
+        Scratch scratch = SCRATCH.get();
+        switch (typeCodes[f] & ~SWAPPED) {
+            case DataPrimitiveUtil.TYPE_U1:
+                for (int k = 0, bit = offset * 8 + bitOffsets[f]; k < dim; k++, bit += bitSizes[f]) {
+                    values[out + k] = bits(buf, bit, bitSizes[f]);
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_U8:
+                byte[] bytes = scratch.bytes(dim);
+                view.get(bytes, 0, dim);
+                for (int k = 0; k < dim; k++) {
+                    values[out + k] = bytes[k];
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_16:
+                short[] shorts = scratch.shorts(dim);
+                view.asShortBuffer().get(shorts, 0, dim);
+                for (int k = 0; k < dim; k++) {
+                    values[out + k] = shorts[k];
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_32:
+                int[] ints = scratch.ints(dim);
+                view.asIntBuffer().get(ints, 0, dim);
+                for (int k = 0; k < dim; k++) {
+                    values[out + k] = ints[k];
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_64:
+                long[] longs = scratch.longs(dim);
+                view.asLongBuffer().get(longs, 0, dim);
+                for (int k = 0; k < dim; k++) {
+                    values[out + k] = longs[k];
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_F32:
+                float[] floats = scratch.floats(dim);
+                view.asFloatBuffer().get(floats, 0, dim);
+                for (int k = 0; k < dim; k++) {
+                    values[out + k] = floats[k];
+                }
+                break;
+            case DataPrimitiveUtil.TYPE_F64:
+                view.asDoubleBuffer().get(values, out, dim);
+                break;
+            default:
+                Arrays.fill(values, out, out + dim, Double.NaN);
+                Arrays.fill(qualities, out, out + dim, BAD);
+                return;
+        }
+        for (int k = out; k < out + dim; k++) {
+            qualities[k] = quality(f, values[k]);
+        }
+    }
+
+    // arrays are bulk read into these before widening, one set per decoding thread
+    // grown to the widest array seen
+    private static final class Scratch {
+
+        private byte[] bytes = new byte[0];
+        private short[] shorts = new short[0];
+        private int[] ints = new int[0];
+        private long[] longs = new long[0];
+        private float[] floats = new float[0];
+
+        byte[] bytes(int length) {
+            return bytes.length >= length ? bytes : (bytes = new byte[length]);
+        }
+
+        short[] shorts(int length) {
+            return shorts.length >= length ? shorts : (shorts = new short[length]);
+        }
+
+        int[] ints(int length) {
+            return ints.length >= length ? ints : (ints = new int[length]);
+        }
+
+        long[] longs(int length) {
+            return longs.length >= length ? longs : (longs = new long[length]);
+        }
+
+        float[] floats(int length) {
+            return floats.length >= length ? floats : (floats = new float[length]);
+        }
+    }
+
+    // bit 0 is the highest value bit of a byte
+    private static int bits(ByteBuffer buf, int bit, int bitSize) {
+        int shift = 8 - (bitSize + (bit & 7));
+        return (Byte.toUnsignedInt(buf.get(bit >>> 3)) >>> shift) & ((1 << bitSize) - 1);
+    }
+
+    private static ByteOrder swap(ByteOrder order) {
+        return order == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+}
@@ -0,0 +1,98 @@
+package sigea.main;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Stream;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+import sigea.entities.Message;
+import sigea.entities.UdpDatagram;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fields of the layouts sent on one port by the type id in the datagram
+ * header (see MsgType), or a single UNTYPED layout when the port has no type
+ * header. A datagram too short to carry the header is of no known layout.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+public class MsgLayouts {
+
+    // layout key of a port without a type header, and type of a datagram too short for one
+    public static final int UNTYPED = -1;
+
+    private final int typeOffset;
+    private final int udpPort;
+    @Getter
+    private final Map<Integer, Seq<Message>> layouts;
+
+    /**
+     *
+     * @param msgs
+     * @param typeOffset - byte offset of the type id, negative when the port
+     * has no type header
+     * @param udpPort
+     */
+    public MsgLayouts(Seq<Message> msgs, int typeOffset, int udpPort) {
+        this.typeOffset = typeOffset;
+        this.udpPort = udpPort;
+        this.layouts = groupByLayout(msgs);
+    }
+
+    private Map<Integer, Seq<Message>> groupByLayout(Seq<Message> msgs) {
+        if (typeOffset < 0) {
+            return HashMap.of(UNTYPED, msgs);
+        }
+        msgs.filter(msg -> msg.getMsgType() == null)
+                .forEach(msg -> log.warn("{} has no MSG_TYPE and is never read from port {}", msg.uniqueKeyName(), udpPort));
+        return Map.narrow(msgs.filter(msg -> msg.getMsgType() != null)
+                .groupBy(msg -> msg.getMsgType().getTypeId()));
+    }
+
+    /**
+     *
+     * @param buf
+     * @return the type id in the header, UNTYPED when it does not fit
+     */
+    public int layoutOf(ByteBuffer buf) {
+        if (typeOffset < 0) {
+            return UNTYPED;
+        }
+        return typeOffset < buf.limit() ? Byte.toUnsignedInt(buf.get(typeOffset)) : UNTYPED;
+    }
+
+    /**
+     * Every layout reads the datagrams of its type from the shared packet
+     * stream, datagrams of no known layout are released
+     *
+     * @param <R>
+     * @param udpPackets - shared by the layouts
+     * @param decoder - by the fields of a layout
+     * @return a stream per layout
+     */
+    public <R> Seq<Observable<R>> demultiplex(Observable<UdpDatagram> udpPackets,
+            Function<Seq<Message>, ObservableTransformer<UdpDatagram, R>> decoder) {
+        if (typeOffset < 0) {
+            return Stream.of(udpPackets.compose(decoder.apply(layouts.get(UNTYPED).get())));
+        }
+        return layouts.toStream()
+                .map(layout -> udpPackets
+                .filter(udpDgram -> layoutOf(udpDgram.getDatagram()) == layout._1)
+                .compose(decoder.apply(layout._2)))
+                .append(udpPackets
+                        .filter(udpDgram -> !layouts.containsKey(layoutOf(udpDgram.getDatagram())))
+                        .doOnNext(this::releaseUnknownLayout)
+                        .ignoreElements()
+                        .<R>toObservable());
+    }
+
+    private void releaseUnknownLayout(UdpDatagram udpDgram) {
+        log.debug("No layout for type {} on port {}", layoutOf(udpDgram.getDatagram()), udpPort);
+        udpDgram.release();
+    }
+}
@@ -1,11 +1,13 @@
 package sigea.main;
 
 import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
 import sigea.entities.MsgConfig;
-import sigea.entities.MsgReading;
+import sigea.entities.MsgKeyDictionary;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.disposables.Disposable;
+import io.vavr.collection.Seq;
 import io.vavr.collection.Stream;
 import io.vavr.control.Try;
 
@@ -16,15 +18,17 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
@@ -36,21 +40,53 @@ import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * Serves readings to GUI clients on port 9069. Clients get the text protocol
+ * unless they send a "Binary" line, which the server acknowledges with the
+ * same line before switching the client to BroadcastFrames. A client first gets
+ * the keys and a snapshot of the last value of every sensor, then only the
+ * sensors that changed, with a full snapshot every KEYFRAME_MILLIS. A
+ * "Subscribe" line narrows a client to the sensors of a SubscriptionFilter, the
+ * client then gets the subscribed keys and a snapshot of them again.
+ *
  * * * * * @author Pasquale Livecchi
  */
 @Slf4j
 @ApplicationScoped
 public class MsgResourceBroadcast {
 
+    private static final String BINARY_REQUEST = "Binary";
+    private static final long KEYFRAME_MILLIS = 10_000;
+
     @Inject
     private Scheduler guiScheduler;
     private ServerSocketChannel serverSocketChan;
-    private final Set<SocketChannel> socketChans = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final BlockingQueue<MsgReading> msgReadingQue = new LinkedBlockingQueue<>();
+    private final Map<SocketChannel, Client> clients = new ConcurrentHashMap<>();
+    private final BlockingQueue<BatchOfMsgReadings> batchQue = new LinkedBlockingQueue<>();
     private final Set<String> msgKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile MsgKeyDictionary keyDictionary = new MsgKeyDictionary(Collections.emptyList());
+    private volatile List<Message> msgs = Collections.emptyList();
+    private final BroadcastFrames frames = new BroadcastFrames();
+    private LastValueTable lastValues = new LastValueTable(0, id -> null);
+    private long nextKeyframe;
     private Disposable broadcastTask;
     private volatile boolean isLoaded;
 
+    // protocol state of a connected client
+    private static class Client {
+
+        private final SocketChannel chan;
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        private final StringBuilder line = new StringBuilder();
+        private boolean binary;
+        // set until the client got a snapshot in its protocol
+        private boolean needsSnapshot = true;
+        private SubscriptionFilter filter = SubscriptionFilter.ALL;
+
+        Client(SocketChannel chan) {
+            this.chan = chan;
+        }
+    }
+
     @PostConstruct
     public void initServerSocket() {
         try {
@@ -67,37 +103,58 @@ public class MsgResourceBroadcast {
 
     @Synchronized
     public void loadConfig(@Observes @NonNull MsgConfig msgCfg) {
-        msgCfg.getMsgs().forEach(msg -> {
-            msgKeys.add(msg.uniqueKeyName());
-        });
-        msgReadingQue.clear();
+        MsgKeyDictionary keys = msgCfg.getKeyDictionary();
+        for (int id = 0; id < keys.size(); id++) {
+            msgKeys.add(keys.key(id));
+        }
+        keyDictionary = keys;
+        msgs = msgCfg.getMsgs();
+        lastValues = new LastValueTable(keys.size(), keys::key);
+        batchQue.clear();
         isLoaded = true;
     }
 
     public void loadMsgReadings(@Observes @NonNull BatchOfMsgReadings bomr) {
-        msgReadingQue.addAll(bomr.getMsgReadings());
+        // batches are never refilled once fired, so they are queued as they are
+        batchQue.add(bomr);
     }
 
     @Synchronized
     private void broadcastMsgs() {
         try {
-            Set<SocketChannel> newChans = new HashSet<>();
+            Set<Client> newClients = new HashSet<>();
             SocketChannel newConn;
             while ((newConn = serverSocketChan.accept()) != null) {
                 newConn.configureBlocking(false);
-                newChans.add(newConn);
+                newClients.add(new Client(newConn));
             }
-            socketChans.addAll(newChans);
+            newClients.forEach(client -> clients.put(client.chan, client));
             if (isLoaded) {
-                broadcast(socketChans, bufferForMsgKeys());
+                // ids may have moved, so bitmaps are compiled again
+                clients.values().forEach(client -> client.filter = subscribe(client.filter.getRequest()));
+                sendKeys(clients.values());
                 isLoaded = false;
-            } else if (!newChans.isEmpty()) {
-                broadcast(newChans, bufferForMsgKeys());
+            } else if (!newClients.isEmpty()) {
+                sendKeys(newClients);
+            }
+            clients.values().forEach(this::readRequests);
+            List<BatchOfMsgReadings> currentBatches = new ArrayList<>();
+            batchQue.drainTo(currentBatches);
+            currentBatches.forEach(lastValues::apply);
+            long now = guiScheduler.now(TimeUnit.MILLISECONDS);
+            boolean keyframe = now >= nextKeyframe;
+            if (keyframe) {
+                nextKeyframe = now + KEYFRAME_MILLIS;
             }
-            List<MsgReading> currentMsgReadings = new LinkedList<>();
-            msgReadingQue.drainTo(currentMsgReadings);
-            broadcast(socketChans, bufferForBatchOfMsgReadings(currentMsgReadings));
-            socketChans.removeIf(sc -> !sc.isOpen());
+            BatchOfMsgReadings update = keyframe ? lastValues.snapshot() : lastValues.changes();
+            Seq<Client> all = Stream.ofAll(clients.values());
+            sendReadings(all.filter(client -> !client.needsSnapshot), update, keyframe);
+            Seq<Client> joined = all.filter(client -> client.needsSnapshot);
+            if (!joined.isEmpty()) {
+                sendReadings(joined, keyframe ? update : lastValues.peekSnapshot(), true);
+                joined.forEach(client -> client.needsSnapshot = false);
+            }
+            clients.keySet().removeIf(sc -> !sc.isOpen());
         } catch (IOException | RuntimeException ex) {
             log.error("Error processing socket information", ex);
             closeChans();
@@ -105,39 +162,108 @@ public class MsgResourceBroadcast {
 
     }
 
-    private void broadcast(Iterable<SocketChannel> chans, ByteBuffer byteMsg) {
-        chans.forEach(chan -> {
-            if (chan.isOpen()) {
-                try {
-                    ByteBuffer buf = ByteBuffer.allocate(1024);
-                    boolean responsePing = false;
-                    while (chan.read(buf) > 0) {
+    // selects the readings once per distinct subscription
+    private void sendReadings(Seq<Client> readingClients, BatchOfMsgReadings batch, boolean snapshot) {
+        if (!batch.hasData()) {
+            return;
+        }
+        readingClients.groupBy(client -> client.filter.getRequest()).values().forEach(subscribers
+                -> sendSelected(subscribers, subscribers.head().filter.select(batch), snapshot));
+    }
+
+    private void sendSelected(Seq<Client> readingClients, BatchOfMsgReadings batch, boolean snapshot) {
+        if (!batch.hasData()) {
+            return;
+        }
+        Seq<Client> textClients = readingClients.filter(client -> !client.binary);
+        Seq<Client> binaryClients = readingClients.filter(client -> client.binary);
+        if (!textClients.isEmpty()) {
+            broadcast(textClients, bufferForBatchOfMsgReadings(Collections.singletonList(batch)));
+        }
+        if (!binaryClients.isEmpty()) {
+            broadcast(binaryClients, snapshot ? frames.snapshot(batch) : frames.readings(Collections.singletonList(batch)));
+        }
+    }
+
+    private void sendKeys(Iterable<Client> keyClients) {
+        Stream.ofAll(keyClients).groupBy(client -> client.filter.getRequest()).values().forEach(subscribers -> {
+            SubscriptionFilter filter = subscribers.head().filter;
+            broadcast(subscribers.filter(client -> !client.binary),
+                    filter.isAll() ? bufferForMsgKeys() : bufferForMsgKeys(filter::includes));
+            broadcast(subscribers.filter(client -> client.binary), frames.keys(keyDictionary, filter::includes));
+        });
+    }
+
+    private SubscriptionFilter subscribe(String request) {
+        return SubscriptionFilter.compile(request, msgs, keyDictionary);
+    }
+
+    // a partial line is kept only while it may still become a request
+    private static boolean isPartialRequest(String partial) {
+        return BINARY_REQUEST.startsWith(partial) || SubscriptionFilter.REQUEST.startsWith(partial)
+                || SubscriptionFilter.isRequest(partial);
+    }
+
+    // answers pings, switches clients that ask for it to binary frames and
+    // subscribes clients to the sensors they ask for
+    private void readRequests(Client client) {
+        try {
+            boolean responsePing = false;
+            while (client.chan.read(client.input) > 0) {
+                client.input.flip();
+                while (client.input.hasRemaining()) {
+                    char c = (char) client.input.get();
+                    if (c != '\n') {
+                        client.line.append(c);
+                    } else if (!client.binary && BINARY_REQUEST.equals(client.line.toString().trim())) {
+                        write(client.chan, ByteBuffer.wrap((BINARY_REQUEST + "\n").getBytes(StandardCharsets.UTF_8)));
+                        client.binary = true;
+                        sendKeys(Collections.singletonList(client));
+                        // the text snapshot is of no use to it anymore
+                        client.needsSnapshot = true;
+                        client.line.setLength(0);
+                    } else if (SubscriptionFilter.isRequest(client.line.toString().trim())) {
+                        client.filter = subscribe(client.line.toString().trim());
+                        sendKeys(Collections.singletonList(client));
+                        client.needsSnapshot = true;
+                        client.line.setLength(0);
+                    } else {
                         responsePing = true;
-                        buf.clear();
-                    }
-                    if (responsePing) {
-                        buf.clear();
-                        buf.put("Pong\n".getBytes(StandardCharsets.UTF_8));
-                        buf.flip();
-                        while (buf.hasRemaining()) {
-                            chan.write(buf);
-                        }
-                    }
-                    while (byteMsg.hasRemaining()) {
-                        chan.write(byteMsg);
+                        client.line.setLength(0);
                     }
-                    byteMsg.rewind();
+                }
+                client.input.clear();
+            }
+            if (responsePing || (client.line.length() > 0 && !isPartialRequest(client.line.toString()))) {
+                client.line.setLength(0);
+                write(client.chan, client.binary
+                        ? frames.pong()
+                        : ByteBuffer.wrap("Pong\n".getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (IOException ex) {
+            Try.run(client.chan::close);
+        }
+    }
+
+    private void broadcast(Iterable<Client> chans, ByteBuffer byteMsg) {
+        chans.forEach(client -> {
+            if (client.chan.isOpen()) {
+                try {
+                    write(client.chan, byteMsg);
                 } catch (IOException ex) {
-                    try {
-                        chan.close();
-                    } catch (IOException ex1) {
-                        // pass
-                    }
+                    Try.run(client.chan::close);
                 }
             }
         });
     }
 
+    private void write(SocketChannel chan, ByteBuffer byteMsg) throws IOException {
+        while (byteMsg.hasRemaining()) {
+            chan.write(byteMsg);
+        }
+        byteMsg.rewind();
+    }
+
     @Synchronized
     protected ByteBuffer bufferForMsgKeys() {
         String start = "Loading\n";
@@ -146,17 +272,29 @@ public class MsgResourceBroadcast {
         return ByteBuffer.wrap((start + byteString + end).getBytes(StandardCharsets.UTF_8));
     }
 
-    private ByteBuffer bufferForBatchOfMsgReadings(List<MsgReading> msgs) {
-        String byteString = Stream.ofAll(msgs)
+    private ByteBuffer bufferForMsgKeys(IntPredicate subscribed) {
+        StringBuilder keys = new StringBuilder("Loading\n");
+        for (int id = 0; id < keyDictionary.size(); id++) {
+            if (subscribed.test(id)) {
+                keys.append(keyDictionary.key(id)).append('\n');
+            }
+        }
+        keys.append("DoneLoading\n");
+        return ByteBuffer.wrap(keys.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer bufferForBatchOfMsgReadings(List<BatchOfMsgReadings> batches) {
+        String byteString = Stream.ofAll(batches)
+                .flatMap(BatchOfMsgReadings::getMsgReadings)
                 .map(m -> m.toString())
                 .mkString("\n") + "\n";
         return ByteBuffer.wrap(byteString.getBytes(StandardCharsets.UTF_8));
     }
 
     private void closeChans() {
-        msgReadingQue.clear();
-        socketChans.forEach(chan -> Try.run(chan::close));
-        socketChans.clear();
+        batchQue.clear();
+        clients.keySet().forEach(chan -> Try.run(chan::close));
+        clients.clear();
     }
 
     @PreDestroy
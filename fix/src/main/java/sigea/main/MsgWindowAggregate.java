@@ -0,0 +1,100 @@
+package sigea.main;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.MsgQuality;
+
+/**
+ * Running min, max and mean of every field of a decode plan over the
+ * datagrams of one period. Each datagram is folded in as it arrives so its
+ * buffer can go back to the pool right away.
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgWindowAggregate {
+
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte BAD = MsgQuality.BAD.byteValue();
+
+    private final MsgDecodePlan plan;
+    // decode output of the current datagram
+    private final double[] values;
+    private final byte[] qualities;
+    private final double[] minimums;
+    private final double[] maximums;
+    private final double[] sums;
+    // good readings per field
+    private final int[] counts;
+    private long lastTime;
+    private int datagrams;
+
+    public MsgWindowAggregate(MsgDecodePlan plan) {
+        int size = plan.size();
+        this.plan = plan;
+        this.values = new double[size];
+        this.qualities = new byte[size];
+        this.minimums = new double[size];
+        this.maximums = new double[size];
+        this.sums = new double[size];
+        this.counts = new int[size];
+        Arrays.fill(minimums, Double.POSITIVE_INFINITY);
+        Arrays.fill(maximums, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Decodes the datagram and folds its good readings into the aggregate
+     *
+     * @param buf
+     * @param time - receive time of the datagram
+     * @return this
+     */
+    public MsgWindowAggregate add(ByteBuffer buf, long time) {
+        plan.decode(buf, values, qualities);
+        for (int i = 0; i < values.length; i++) {
+            if (qualities[i] == GOOD) {
+                double value = values[i];
+                minimums[i] = Math.min(minimums[i], value);
+                maximums[i] = Math.max(maximums[i], value);
+                sums[i] += value;
+                counts[i]++;
+            }
+        }
+        lastTime = time;
+        datagrams++;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return datagrams == 0;
+    }
+
+    /**
+     * A batch with the mean of each field as its value and the min and max in
+     * the aggregate columns, fields without a good reading in the period are
+     * NaN with bad quality
+     *
+     * @param keyLookup
+     * @return
+     */
+    public BatchOfMsgReadings toBatch(IntFunction<String> keyLookup) {
+        int size = plan.size();
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(size, keyLookup);
+        batch.addAggregateColumns();
+        plan.appendTo(batch, lastTime);
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 0) {
+                batch.getValues()[i] = sums[i] / counts[i];
+                batch.getMinimums()[i] = minimums[i];
+                batch.getMaximums()[i] = maximums[i];
+                batch.getQualities()[i] = GOOD;
+            } else {
+                batch.getMinimums()[i] = Double.NaN;
+                batch.getMaximums()[i] = Double.NaN;
+                batch.getQualities()[i] = BAD;
+            }
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,232 @@
+package sigea.main;
+
+import sigea.entities.OverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.exceptions.MissingBackpressureException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A bounded buffer between a fast producer and a slower consumer. Upstream is
+ * read as fast as it produces while downstream is served on demand, and once
+ * the buffer is full items are dropped according to the overflow strategy.
+ * Every dropped item is counted and handed to a drop handler so pooled
+ * resources can be released.
+ *
+ * Upstream demand is deliberately unbounded. The buffer sits on a socket read
+ * loop, where holding back demand only moves the drops into the kernel
+ * receive buffer. There they are not counted, and the overflow strategy has
+ * no say in which datagrams are lost.
+ *
+ * @author Pasquale Livecchi
+ * @param <T>
+ */
+public class OverflowBuffer<T> implements FlowableTransformer<T, T> {
+
+    private final int capacity;
+    private final OverflowStrategy strategy;
+    private final Consumer<? super T> onDrop;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     *
+     * @param capacity - maximum number of buffered items
+     * @param strategy
+     * @param onDrop - called with every item that is dropped
+     */
+    public OverflowBuffer(int capacity, OverflowStrategy strategy, Consumer<? super T> onDrop) {
+        this.strategy = strategy;
+        this.capacity = strategy == OverflowStrategy.LATEST ? 1 : Math.max(1, capacity);
+        this.onDrop = onDrop;
+    }
+
+    /**
+     * Total number of items dropped by every subscription of this buffer
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public OverflowStrategy getStrategy() {
+        return strategy;
+    }
+
+    @Override
+    public Publisher<T> apply(Flowable<T> upstream) {
+        return upstream.lift((Subscriber<? super T> downstream) -> new OverflowSubscriber(downstream));
+    }
+
+    // the work in progress counter serializes delivery to downstream
+    private final class OverflowSubscriber extends AtomicInteger implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = 1L;
+        private final Subscriber<? super T> downstream;
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        OverflowSubscriber(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            upstream = s;
+            downstream.onSubscribe(this);
+            // the buffer rather than upstream applies backpressure, see the class doc
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                onDrop.accept(item);
+                return;
+            }
+            T overflow = null;
+            synchronized (queue) {
+                if (queue.size() < capacity) {
+                    queue.offer(item);
+                } else if (strategy == OverflowStrategy.DROP_NEWEST || strategy == OverflowStrategy.ERROR) {
+                    overflow = item;
+                } else {
+                    overflow = queue.poll();
+                    queue.offer(item);
+                }
+            }
+            if (overflow != null) {
+                dropped.increment();
+                onDrop.accept(overflow);
+                if (strategy == OverflowStrategy.ERROR) {
+                    upstream.cancel();
+                    onError(new MissingBackpressureException("Receive buffer of " + capacity + " items overflowed"));
+                    return;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                if (getAndIncrement() == 0) {
+                    clear();
+                }
+            }
+        }
+
+        private T poll() {
+            synchronized (queue) {
+                return queue.poll();
+            }
+        }
+
+        private boolean isEmpty() {
+            synchronized (queue) {
+                return queue.isEmpty();
+            }
+        }
+
+        private void clear() {
+            T item;
+            while ((item = poll()) != null) {
+                onDrop.accept(item);
+            }
+        }
+
+        private void terminate() {
+            if (error != null) {
+                downstream.onError(error);
+            } else {
+                downstream.onComplete();
+            }
+        }
+
+        private void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                long r = requested.get();
+                long e = 0L;
+                while (e != r) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+                    boolean d = done;
+                    T item = poll();
+                    if (item == null) {
+                        if (d) {
+                            terminate();
+                            return;
+                        }
+                        break;
+                    }
+                    downstream.onNext(item);
+                    e++;
+                }
+                if (e == r) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+                    if (done && isEmpty()) {
+                        terminate();
+                        return;
+                    }
+                }
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package sigea.main;
 
 import io.reactivex.*;
-import io.reactivex.disposables.Disposable;
 import io.vavr.CheckedFunction0;
 import io.vavr.control.Try;
 
@@ -20,27 +19,25 @@ public interface Resource<T> {
     void dispose() throws Exception;
 
     /**
-     * Continuously calls the next method to emit an observable stream
+     * Calls the next method only when downstream requests more values, so a
+     * slow consumer never makes the stream buffer without bound. Combine with
+     * an OverflowBuffer to keep reading while dropping under overload, it
+     * requests without bound so next is called as fast as it returns.
+     *
+     * The resource is disposed as soon as the stream is cancelled, from the
+     * cancelling thread, so a next call blocked on another thread is woken up
+     * even by schedulers that do not interrupt their threads.
      *
      * @param <T>
      * @param func
      * @return
      */
-    static <T> Observable<T> continuousResourceStream(CheckedFunction0<Resource<T>> func) {
-        return Observable.create(emitter -> {
-            try {
-                Resource<T> syncResource = func.apply();
-
-                Disposable continuousStream = Observable.just(1)
-                        .repeat()
-                        .doOnDispose(() -> Try.run(syncResource::dispose))
-                        .subscribe(i -> Try.of(syncResource::next)
+    static <T> Flowable<T> flowableResourceStream(CheckedFunction0<Resource<T>> func) {
+        return Flowable.using(() -> Try.of(func).get(),
+                (Resource<T> syncResource) -> Flowable.generate((Emitter<T> emitter) -> Try.of(syncResource::next)
                         .onFailure(emitter::onError)
-                        .onSuccess(emitter::onNext));
-                emitter.setDisposable(continuousStream);
-            } catch (Throwable ex) {
-                emitter.onError(ex);
-            }
-        });
+                        .onSuccess(emitter::onNext)),
+                syncResource -> Try.run(syncResource::dispose),
+                true);
     }
 }
@@ -0,0 +1,83 @@
+package sigea.main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, preallocated, lock free ring for one producer and any number of
+ * consumers. Every slot carries a sequence that tells whether it is free for
+ * the producer or published for the consumers (the bounded queue design of
+ * Dmitry Vyukov), so offering and polling never allocate and never block.
+ *
+ * @author Pasquale Livecchi
+ * @param <T>
+ */
+public class RingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    // slot i is free for position p when its sequence is p and published when it is p + 1
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    // only touched by the producer
+    private long tail;
+
+    /**
+     *
+     * @param capacity - rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Publishes an item, only ever called by the producer
+     *
+     * @param item
+     * @return false when the ring is full
+     */
+    public boolean offer(T item) {
+        int index = (int) tail & mask;
+        if (sequences.get(index) != tail) {
+            return false;
+        }
+        slots.lazySet(index, item);
+        sequences.lazySet(index, tail + 1);
+        tail++;
+        return true;
+    }
+
+    /**
+     * Takes the oldest published item, safe for concurrent consumers
+     *
+     * @return the item or null when the ring is empty
+     */
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long published = sequences.get(index) - (position + 1);
+            if (published < 0) {
+                return null;
+            }
+            if (published == 0 && head.compareAndSet(position, position + 1)) {
+                T item = slots.get(index);
+                slots.lazySet(index, null);
+                // frees the slot for the producer's next lap
+                sequences.lazySet(index, position + mask + 1);
+                return item;
+            }
+        }
+    }
+}
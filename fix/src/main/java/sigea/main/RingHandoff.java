@@ -0,0 +1,124 @@
+package sigea.main;
+
+import io.reactivex.Flowable;
+import io.reactivex.Notification;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.disposables.Disposable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Hands items from the thread(s) producing them to a dedicated consumer thread
+ * through a preallocated RingBuffer instead of Rx operator queues. The consumer
+ * runs everything downstream and waits for items with the configured wait
+ * strategy. When the ring is full the newest item is dropped, counted and
+ * handed to the drop handler. Upstream termination is passed on by the
+ * consumer once it has emitted every item still in the ring.
+ *
+ * The ring takes any number of consumers, yet decoding is not fanned out to
+ * several of them. Sequence tracking, sampling windows and deadbands run
+ * after the hand off and depend on datagrams arriving in order, so a single
+ * consumer per connection decodes them in order. Separate connections still
+ * decode in parallel on their own threads.
+ *
+ * @author Pasquale Livecchi
+ * @param <T>
+ */
+public class RingHandoff<T> {
+
+    private final int capacity;
+    private final WaitStrategy waitStrategy;
+    private final Consumer<? super T> onDrop;
+    private final String threadName;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     *
+     * @param capacity - ring slots, rounded up to a power of two
+     * @param waitStrategy
+     * @param onDrop - called with every item that is dropped
+     * @param threadName - name of the consumer thread
+     */
+    public RingHandoff(int capacity, WaitStrategy waitStrategy, Consumer<? super T> onDrop, String threadName) {
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+        this.onDrop = onDrop;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Total number of items dropped by every subscription
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Reads upstream without backpressure into a new ring per subscription,
+     * upstream emissions must not overlap since the ring has one producer
+     *
+     * @param upstream
+     * @return items emitted on the consumer thread
+     */
+    public Observable<T> apply(Flowable<T> upstream) {
+        return Observable.create(emitter -> {
+            ObservableEmitter<T> serialized = emitter.serialize();
+            RingBuffer<T> ring = new RingBuffer<>(capacity);
+            AtomicBoolean running = new AtomicBoolean(true);
+            // set by the producer after its last offer
+            AtomicReference<Notification<T>> terminal = new AtomicReference<>();
+            Thread consumer = new Thread(() -> consume(ring, serialized, running, terminal), threadName);
+            consumer.setDaemon(true);
+            consumer.start();
+            Disposable producer = upstream.subscribe(item -> {
+                if (!ring.offer(item)) {
+                    dropped.increment();
+                    onDrop.accept(item);
+                }
+            }, ex -> terminal.set(Notification.createOnError(ex)),
+                    () -> terminal.set(Notification.createOnComplete()));
+            emitter.setCancellable(() -> {
+                running.set(false);
+                producer.dispose();
+            });
+        });
+    }
+
+    private void consume(RingBuffer<T> ring, ObservableEmitter<T> emitter, AtomicBoolean running,
+            AtomicReference<Notification<T>> terminal) {
+        int attempts = 0;
+        while (running.get()) {
+            // read before polling, an empty ring then holds no item offered before the terminal event
+            Notification<T> end = terminal.get();
+            T item = ring.poll();
+            if (item != null) {
+                attempts = 0;
+                emitter.onNext(item);
+            } else if (end != null) {
+                running.set(false);
+                if (end.isOnError()) {
+                    emitter.onError(end.getError());
+                } else {
+                    emitter.onComplete();
+                }
+            } else {
+                waitStrategy.idle(attempts);
+                attempts = attempts < Integer.MAX_VALUE ? attempts + 1 : attempts;
+            }
+        }
+        // whatever is left is never emitted
+        T item;
+        while ((item = ring.poll()) != null) {
+            onDrop.accept(item);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package sigea.main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follows the 32 bit sequence numbers of the datagrams of one connection and
+ * counts gaps, reordered and duplicate datagrams. Sequence numbers wrap
+ * around. A datagram that arrives late fills the gap it was counted in, one
+ * that was already seen is a duplicate, and one too far behind to tell or
+ * MAX_GAP or more ahead is taken as a restarted sender rather than loss.
+ *
+ * Track is called from a single thread, the counters can be read from any
+ * thread.
+ *
+ * @author Pasquale Livecchi
+ */
+public class SequenceTracker {
+
+    // sequence numbers before the expected one that are remembered as seen
+    private static final int HISTORY = 64;
+    // jumps ahead this large are a resync, not lost datagrams
+    private static final int MAX_GAP = 1 << 16;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder reordered = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private boolean started;
+    private int expected;
+    // bit k set when expected - 1 - k was seen
+    private long seen;
+
+    /**
+     *
+     * @param sequence - sequence number of a received datagram
+     */
+    public void track(int sequence) {
+        received.increment();
+        if (!started) {
+            restart(sequence);
+            return;
+        }
+        int ahead = sequence - expected;
+        if (ahead >= MAX_GAP) {
+            restarts.increment();
+            restart(sequence);
+            return;
+        }
+        if (ahead >= 0) {
+            if (ahead > 0) {
+                lost.add(ahead);
+            }
+            seen = ahead + 1 >= HISTORY ? 1L : (seen << (ahead + 1)) | 1L;
+            expected = sequence + 1;
+            return;
+        }
+        int behind = -ahead - 1;
+        if (behind >= HISTORY) {
+            restarts.increment();
+            restart(sequence);
+        } else if ((seen & (1L << behind)) != 0) {
+            duplicates.increment();
+        } else {
+            seen |= 1L << behind;
+            reordered.increment();
+            lost.decrement();
+        }
+    }
+
+    private void restart(int sequence) {
+        started = true;
+        expected = sequence + 1;
+        seen = 1L;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getLost() {
+        return lost.sum();
+    }
+
+    public long getReordered() {
+        return reordered.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getRestarts() {
+        return restarts.sum();
+    }
+}
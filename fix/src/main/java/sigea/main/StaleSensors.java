@@ -0,0 +1,176 @@
+package sigea.main;
+
+import io.vavr.collection.Seq;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgQuality;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Flags sensors that stopped updating. Last update times are kept in a
+ * primitive array by sensor id and the sensors are due on a hashed timing
+ * wheel of TICK_MS slots, so an update is only an array write and a tick only
+ * visits the sensors due in its slot. A due sensor that was updated in the
+ * meantime is put back on the wheel at its new deadline, one that was not is
+ * reported stale once, and is back on the wheel after its next update.
+ *
+ * Update can be called from any thread, advance from a single timer.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+public class StaleSensors {
+
+    public static final long TICK_MS = 100;
+    private static final int WHEEL_SLOTS = 512;
+    private static final byte UNKNOWN = MsgQuality.UNKNOWN.byteValue();
+    private static final byte SCHEDULED = 1;
+    private static final byte STALE = 2;
+
+    private final IntFunction<String> keyLookup;
+    // by sensor id, a timeout of 0 is not tracked
+    private final long[] timeouts;
+    private final long[] lastUpdates;
+    // unscheduled until first updated
+    private final byte[] states;
+    private final int[][] slots = new int[WHEEL_SLOTS][];
+    private final int[] slotSizes = new int[WHEEL_SLOTS];
+    private final boolean tracking;
+    // tick of the slot visited last
+    private long tick = -1;
+
+    /**
+     *
+     * @param msgs - with ids assigned by the key dictionary
+     * @param keyLookup
+     */
+    public StaleSensors(Seq<Message> msgs, IntFunction<String> keyLookup) {
+        this(msgs, msg -> 0, keyLookup);
+    }
+
+    /**
+     *
+     * @param msgs - with ids assigned by the key dictionary
+     * @param minStaleMs - shortest timeout a message can be updated within,
+     * shorter timeouts are raised to it
+     * @param keyLookup
+     */
+    public StaleSensors(Seq<Message> msgs, ToLongFunction<Message> minStaleMs, IntFunction<String> keyLookup) {
+        this.keyLookup = keyLookup;
+        int size = msgs.map(msg -> msg.getId() + msg.arrayLength()).max().getOrElse(0);
+        this.timeouts = new long[size];
+        this.lastUpdates = new long[size];
+        this.states = new byte[size];
+        for (Message msg : msgs) {
+            Arrays.fill(timeouts, msg.getId(), msg.getId() + msg.arrayLength(), timeout(msg, minStaleMs.applyAsLong(msg)));
+        }
+        this.tracking = msgs.exists(msg -> msg.getStaleMs() > 0);
+        for (int s = 0; s < WHEEL_SLOTS; s++) {
+            slots[s] = new int[16];
+        }
+    }
+
+    private static long timeout(Message msg, long minStaleMs) {
+        if (msg.getStaleMs() <= 0) {
+            return 0;
+        }
+        if (msg.getStaleMs() < minStaleMs) {
+            log.warn("STALE_MS of {} raised from {} to {}, its connection does not update it more often", msg.uniqueKeyName(), msg.getStaleMs(), minStaleMs);
+            return minStaleMs;
+        }
+        return msg.getStaleMs();
+    }
+
+    /**
+     *
+     * @return whether any sensor has a stale timeout
+     */
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * Records the update of every sensor of the batch
+     *
+     * @param batch
+     * @param now - current time in millis
+     */
+    public void update(BatchOfMsgReadings batch, long now) {
+        int[] sensorIds = batch.getSensorIds();
+        for (int i = 0; i < batch.size(); i++) {
+            int id = sensorIds[i];
+            if (id >= 0 && id < timeouts.length && timeouts[id] > 0) {
+                // a racing tick may see the previous time, the sensor then recovers on its next update
+                lastUpdates[id] = now;
+                if (states[id] != SCHEDULED) {
+                    schedule(id, now);
+                }
+            }
+        }
+    }
+
+    private synchronized void schedule(int id, long now) {
+        if (states[id] != SCHEDULED) {
+            states[id] = SCHEDULED;
+            add(id, now + timeouts[id]);
+        }
+    }
+
+    /**
+     * Visits the slots due since the previous call
+     *
+     * @param now - current time in millis
+     * @return a reading of unknown quality per sensor that went stale
+     */
+    public synchronized BatchOfMsgReadings advance(long now) {
+        BatchOfMsgReadings stale = new BatchOfMsgReadings(0, keyLookup);
+        long target = now / TICK_MS;
+        if (tick < 0) {
+            tick = target;
+        }
+        // a turn of the wheel visits every sensor, however late the timer is
+        long from = Math.max(tick + 1, target - WHEEL_SLOTS + 1);
+        for (tick = from; tick <= target; tick++) {
+            expire((int) (tick % WHEEL_SLOTS), now, stale);
+        }
+        tick = target;
+        return stale;
+    }
+
+    private void expire(int slot, long now, BatchOfMsgReadings stale) {
+        int[] due = slots[slot];
+        int count = slotSizes[slot];
+        // sensors due a turn or more later stay in the slot
+        int kept = 0;
+        for (int k = 0; k < count; k++) {
+            int id = due[k];
+            long deadline = lastUpdates[id] + timeouts[id];
+            if (now >= deadline) {
+                states[id] = STALE;
+                // read times are in seconds
+                stale.add(id, Double.NaN, TimeUnit.MILLISECONDS.toSeconds(now), UNKNOWN);
+            } else if (slotOf(deadline) == slot) {
+                due[kept++] = id;
+            } else {
+                add(id, deadline);
+            }
+        }
+        slotSizes[slot] = kept;
+    }
+
+    private int slotOf(long deadline) {
+        return (int) (Math.max(deadline / TICK_MS, tick + 1) % WHEEL_SLOTS);
+    }
+
+    private void add(int id, long deadline) {
+        int slot = slotOf(deadline);
+        if (slotSizes[slot] == slots[slot].length) {
+            slots[slot] = Arrays.copyOf(slots[slot], slotSizes[slot] * 2);
+        }
+        slots[slot][slotSizes[slot]++] = id;
+    }
+}
@@ -0,0 +1,113 @@
+package sigea.main;
+
+import io.vavr.control.Try;
+import java.util.BitSet;
+import java.util.List;
+import lombok.Getter;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+
+/**
+ * Sensors a broadcast client subscribed to, compiled from a request line into
+ * a bitmap of sensor ids once per request and config. A request is
+ * "Subscribe term,term,..." where a term is prefix:keyPrefix, msg:MSG_NAME,
+ * conn:CONNECTION, id:id or id:first-last. A term without a kind takes the
+ * kind of the term before it, so "id:1,4,7-9" lists ids. A request without
+ * terms subscribes to every sensor, terms that do not parse match nothing.
+ *
+ * @author Pasquale Livecchi
+ */
+public class SubscriptionFilter {
+
+    public static final String REQUEST = "Subscribe";
+    public static final SubscriptionFilter ALL = new SubscriptionFilter(REQUEST, null);
+
+    @Getter
+    private final String request;
+    // null when every sensor is subscribed
+    private final BitSet ids;
+
+    private SubscriptionFilter(String request, BitSet ids) {
+        this.request = request;
+        this.ids = ids;
+    }
+
+    /**
+     *
+     * @param line
+     * @return whether the line is a subscription request
+     */
+    public static boolean isRequest(String line) {
+        return line.equals(REQUEST) || line.startsWith(REQUEST + " ");
+    }
+
+    /**
+     *
+     * @param request
+     * @param msgs - with ids assigned by the key dictionary
+     * @param keys
+     * @return
+     */
+    public static SubscriptionFilter compile(String request, List<Message> msgs, MsgKeyDictionary keys) {
+        String terms = request.substring(REQUEST.length()).trim();
+        if (terms.isEmpty()) {
+            return ALL;
+        }
+        BitSet ids = new BitSet(keys.size());
+        String kind = "";
+        for (String term : terms.split(",")) {
+            int colon = term.indexOf(':');
+            if (colon >= 0) {
+                kind = term.substring(0, colon).trim();
+            }
+            String value = term.substring(colon + 1).trim();
+            switch (kind) {
+                case "prefix":
+                    for (int id = 0; id < keys.size(); id++) {
+                        if (keys.key(id).startsWith(value)) {
+                            ids.set(id);
+                        }
+                    }
+                    break;
+                case "msg":
+                    msgs.stream().filter(msg -> msg.getMsgName().equals(value))
+                            .forEach(msg -> ids.set(msg.getId(), msg.getId() + msg.arrayLength()));
+                    break;
+                case "conn":
+                    msgs.stream().filter(msg -> msg.getMsgConn().equalsIgnoreCase(value))
+                            .forEach(msg -> ids.set(msg.getId(), msg.getId() + msg.arrayLength()));
+                    break;
+                case "id":
+                    String[] range = value.split("-", 2);
+                    Try.run(() -> {
+                        int first = Integer.parseInt(range[0].trim());
+                        int last = range.length > 1 ? Integer.parseInt(range[1].trim()) : first;
+                        ids.set(Math.max(0, first), Math.min(keys.size(), last + 1));
+                    });
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new SubscriptionFilter(request, ids);
+    }
+
+    public boolean isAll() {
+        return ids == null;
+    }
+
+    public boolean includes(int id) {
+        return ids == null || (id >= 0 && ids.get(id));
+    }
+
+    /**
+     *
+     * @param batch
+     * @return the batch itself when every sensor is subscribed, or a new batch
+     * of the subscribed readings
+     */
+    public BatchOfMsgReadings select(BatchOfMsgReadings batch) {
+        return ids == null ? batch : batch.select(this::includes);
+    }
+}
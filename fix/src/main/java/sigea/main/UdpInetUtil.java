@@ -1,5 +1,9 @@
 package sigea.main;
 
+import static io.vavr.API.$;
+import static io.vavr.API.Case;
+
+import java.io.IOException;
 import java.net.*;
 import java.nio.channels.DatagramChannel;
 import java.util.Enumeration;
@@ -19,6 +23,39 @@ public class UdpInetUtil {
     public static Try<DatagramChannel> createUdpInetChannel(SocketAddress address) {
         return Try.of(() -> DatagramChannel.open(StandardProtocolFamily.INET).bind(address));
     }
+
+    /**
+     * Creates a DatagramChannel and binds to the provided address, optionally
+     * with SO_REUSEPORT so several channels can share the port and the kernel
+     * spreads datagrams across them by source address and port
+     * @param address
+     * @param reusePort
+     * @return 
+     */
+    public static Try<DatagramChannel> createUdpInetChannel(SocketAddress address, boolean reusePort) {
+        if (!reusePort) {
+            return createUdpInetChannel(address);
+        }
+        return reusePortOption().mapTry(option -> {
+            DatagramChannel chan = DatagramChannel.open(StandardProtocolFamily.INET);
+            try {
+                return chan.setOption(option, true).bind(address);
+            } catch (IOException | RuntimeException ex) {
+                chan.close();
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * SO_REUSEPORT is only defined from java 9 on and not on every platform
+     * @return 
+     */
+    @SuppressWarnings("unchecked")
+    public static Try<SocketOption<Boolean>> reusePortOption() {
+        return Try.of(() -> (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null))
+                .mapFailure(Case($(), ex -> new UnsupportedOperationException("SO_REUSEPORT is not supported by this JVM")));
+    }
     
     /**
      * Gets the network interface for an address
@@ -1,29 +1,34 @@
 package sigea.main;
 
-import static io.vavr.API.$;
-import static io.vavr.API.Case;
-import static io.vavr.API.Match;
-import static io.vavr.Predicates.isIn;
-
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.IngestMode;
 import sigea.entities.Message;
 import sigea.entities.MsgConfig;
-import sigea.entities.MsgQuality;
-import sigea.entities.MsgReading;
+import sigea.entities.MsgConnection;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.OverflowStrategy;
+import sigea.entities.SamplingMode;
+import sigea.entities.UdpDatagram;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
 import io.vavr.collection.Seq;
 import io.vavr.collection.Stream;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.util.function.Function;
 import lombok.Synchronized;
@@ -37,137 +42,356 @@ import lombok.extern.slf4j.Slf4j;
 public class UdpMsgAcquisition extends MsgAcquisition {
 
     private final MsgReadingSubscription msgSub = new MsgReadingSubscription();
+    // only set when ports are read in selector mode
+    private UdpSelectorEngine selectorEngine;
+    // only set when ports are read on virtual threads
+    private ExecutorService virtualThreads;
+    // runs the blocking receive loops, io unless on virtual threads
+    private Scheduler receiveScheduler;
+
+    // idle frame buffers kept per fragmented connection
+    private static final int POOLED_FRAMES = 4;
 
     private class UdpMsgInterface implements ObservableMsgInterface {
 
-        private final Seq<Message> msgItems;
+        private final ByteBufferPool bufferPool;
+        private final MsgLayouts layouts;
+        private final MsgKeyDictionary keyDictionary;
         private final int udpPort;
+        private final int receivers;
+        private final UdpSelectorEngine engine;
+        private final Scheduler receiveOn;
+        private final OverflowBuffer<UdpDatagram> receiveQueue;
+        // null unless datagrams are handed to decoding through a ring
+        private final RingHandoff<UdpDatagram> ringHandoff;
+        private final SamplingMode samplingMode;
+        private final long periodMs;
+        private final int decimate;
+        private final IntegrityCheck integrity;
+        private final ByteOrder byteOrder;
+        private final long heartbeatMs;
+        private final int sequenceOffset;
+        private final SequenceTracker sequence = new SequenceTracker();
+        private final ConnectionHealth health;
+        private final StaleSensors staleSensors;
+        // null unless the connection sends fragmented frames
+        private final FrameAssembler assembler;
+        private long reportedFrameDrops;
+        private long reportedLost;
+        private long reportedDrops;
         private Observable<BatchOfMsgReadings> cachedMsgReadings;
 
-        public UdpMsgInterface(int udpPort, Seq<Message> msgs) {
-            this.udpPort = udpPort;//UdpInetUtil.findRandomUnusedUdpPort();
-            this.msgItems = msgs;
+        public UdpMsgInterface(MsgConnection msgConn, MsgKeyDictionary keyDictionary, StaleSensors staleSensors, Seq<Message> msgs) {
+            this.keyDictionary = keyDictionary;
+            this.staleSensors = staleSensors;
+            this.udpPort = msgConn.getPort();//UdpInetUtil.findRandomUnusedUdpPort();
+            this.receivers = Math.max(1, msgConn.getReceivers());
+            // room for every datagram that can be held at once, the queue of each receiver,
+            // the one each is receiving into and the prefetch of decoding, buffers are only
+            // allocated once a backlog needs them
+            this.bufferPool = UdpResource.createDatagramPool(receivers * (Math.max(1, msgConn.getQueueSize()) + 1) + Flowable.bufferSize());
+            this.receiveQueue = new OverflowBuffer<>(msgConn.getQueueSize(),
+                    OverflowStrategy.fromSetting(msgConn.getOverflow()), UdpDatagram::release);
+            this.ringHandoff = "RING".equalsIgnoreCase(msgConn.getHandoff())
+                    ? new RingHandoff<>(msgConn.getQueueSize(), WaitStrategy.fromSetting(msgConn.getRingWait()),
+                            UdpDatagram::release, "sigea-udp-decode-" + udpPort)
+                    : null;
+            this.samplingMode = SamplingMode.fromSetting(msgConn.getSampling());
+            this.periodMs = Math.max(1, msgConn.getPeriodMs());
+            this.decimate = Math.max(1, msgConn.getDecimate());
+            this.integrity = IntegrityCheck.fromSetting(msgConn.getIntegrity());
+            this.byteOrder = DataPrimitiveUtil.byteOrder(msgConn.getByteOrder(), ByteOrder.LITTLE_ENDIAN);
+            this.sequenceOffset = msgConn.getSequenceOffset();
+            this.heartbeatMs = msgConn.getHeartbeatMs();
+            this.layouts = new MsgLayouts(msgs, msgConn.getTypeOffset(), udpPort);
+            this.assembler = msgConn.isFragmented()
+                    ? new FrameAssembler(new ByteBufferPool(FrameFragments.frameBytes(msgConn, msgs), POOLED_FRAMES),
+                            msgConn.getFragmentTimeoutMs())
+                    : null;
+            this.health = new ConnectionHealth(msgConn.getNameId(), msgs, msgConn.isHealthGroups(),
+                    sequenceOffset >= 0 ? Option.of(sequence) : Option.none());
+            this.engine = selectorEngine;
+            this.receiveOn = receiveScheduler;
+        }
+
+        @Override
+        public ConnectionHealth health() {
+            return health;
         }
 
         @Override
         @Synchronized
         public Observable<BatchOfMsgReadings> asObservable() {
             if (cachedMsgReadings == null) {
-                cachedMsgReadings = Observable.merge(composeMsgStream());
+                // shared so every subscriber decodes (and releases) each datagram once
+                cachedMsgReadings = Observable.merge(composeMsgStream()).share();
             }
             return cachedMsgReadings;
         }
 
+        // every layout reads the datagrams of its type from the shared packet stream
         private Seq<Observable<BatchOfMsgReadings>> composeMsgStream() {
-            Observable<ByteBuffer> udpPackets = setupUdpPacketStream();
-            return Stream.of(msgItems)
-                    .map(mi -> linkMsgStreamToUdpPackets(mi))
-                    .map(udpPackets::compose);
+            return layouts.demultiplex(setupUdpPacketStream(), this::linkMsgStreamToUdpPackets);
         }
 
-        private Observable<ByteBuffer> setupUdpPacketStream() {
-            return UdpResource.openStream(this::openUdpChannel)
-                    .subscribeOn(io)
+        private Observable<UdpDatagram> setupUdpPacketStream() {
+            return handOffToDecoding(openUdpPacketSource())
                     .doOnSubscribe(sub -> log.info("Opening Udp socket connection on port {}", udpPort))
                     .doOnDispose(() -> log.info("Closing Udp socket connection on port {}", udpPort))
-                    .map(udpDgram -> copyAsLittleEndianToPreventByteOrderMishaps(udpDgram.getDatagram()))
+                    .doOnNext(udpDgram -> udpDgram.getDatagram().order(byteOrder))
+                    .compose(this::reassembleFrames)
+                    .doOnNext(this::trackSequence)
                     .doOnError(ex -> log.error("Error reading Udp data: {}", ex.getMessage()))
                     .retryWhen(throwable -> throwable.delay(5, TimeUnit.SECONDS, computation))//retry after 5 seconds when there is an error
                     .share(); // share makes sure we don't have multiple resources open and allows async multicast of observable stream
         }
 
-        private DatagramChannel openUdpChannel() throws IOException {
-            return UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", udpPort)).get();
+        // bounded hand off from the receiving threads to decoding
+        private Observable<UdpDatagram> handOffToDecoding(Flowable<UdpDatagram> udpDgrams) {
+            if (ringHandoff != null) {
+                return ringHandoff.apply(udpDgrams);
+            }
+            return udpDgrams.observeOn(computation).toObservable();
+        }
+
+        // one socket per receiver, several receivers share the port through SO_REUSEPORT
+        private Flowable<UdpDatagram> openUdpPacketSource() {
+            if (receivers == 1) {
+                return openUdpReceiver();
+            }
+            log.info("Sharding Udp port {} across {} receivers", udpPort, receivers);
+            return Flowable.merge(Stream.range(0, receivers)
+                    .map(i -> openUdpReceiver()));
+        }
+
+        // a blocking read loop on its own io thread, or a registration on the shared selector engine,
+        // each receiver keeps reading into a bounded queue that drops by the overflow strategy
+        // unless the ring hand off is the bounded queue
+        private Flowable<UdpDatagram> openUdpReceiver() {
+            Flowable<UdpDatagram> udpDgrams = engine != null
+                    ? engine.openStream(this::openUdpChannel, bufferPool).toFlowable(BackpressureStrategy.MISSING)
+                    : UdpResource.openPooledFlowable(this::openUdpChannel, bufferPool).subscribeOn(receiveOn);
+            return ringHandoff != null ? udpDgrams : udpDgrams.compose(receiveQueue);
+        }
+
+        // fragments are folded into whole frames which then go down the unfragmented path,
+        // a timer times incomplete frames out when no more fragments arrive
+        private Observable<UdpDatagram> reassembleFrames(Observable<UdpDatagram> udpDgrams) {
+            if (assembler == null) {
+                return udpDgrams;
+            }
+            Observable<UdpDatagram> expiry = Observable.interval(assembler.getExpiryPeriodMs(), TimeUnit.MILLISECONDS, computation)
+                    .doOnNext(i -> assembler.expire(System.currentTimeMillis()))
+                    .ignoreElements()
+                    .toObservable();
+            return udpDgrams.flatMapMaybe(fragment -> Maybe.fromCallable(() -> assembler.accept(fragment)))
+                    .mergeWith(expiry);
+        }
+
+        // every datagram is tracked, before any is sampled out
+        private void trackSequence(UdpDatagram udpDgram) {
+            ByteBuffer buf = udpDgram.getDatagram();
+            if (sequenceOffset >= 0 && sequenceOffset + 4 <= buf.limit()) {
+                sequence.track(buf.getInt(sequenceOffset));
+            }
+        }
+
+        // only the health timer reads and moves the reported counts
+        @Override
+        public void reportDrops() {
+            long dropped = ringHandoff != null ? ringHandoff.getDropped() : receiveQueue.getDropped();
+            if (dropped != reportedDrops) {
+                log.warn("Dropped {} datagrams on port {} ({}), {} in total", dropped - reportedDrops,
+                        udpPort, ringHandoff != null ? "full ring" : receiveQueue.getStrategy(), dropped);
+                reportedDrops = dropped;
+            }
+            long lost = sequence.getLost();
+            if (lost > reportedLost) {
+                log.warn("Lost {} datagrams upstream of port {}, {} in total ({} reordered, {} duplicates)",
+                        lost - reportedLost, udpPort, lost, sequence.getReordered(), sequence.getDuplicates());
+            }
+            reportedLost = lost;
+            long frameDrops = assembler != null ? assembler.getDropped() : 0;
+            if (frameDrops > reportedFrameDrops) {
+                log.warn("Dropped {} incomplete frames on port {}, {} in total", frameDrops - reportedFrameDrops, udpPort, frameDrops);
+            }
+            reportedFrameDrops = frameDrops;
         }
 
-        private ByteBuffer copyAsLittleEndianToPreventByteOrderMishaps(ByteBuffer buf) {
-            return ByteBuffer.wrap(buf.array(), 0, buf.limit())
-                    .order(ByteOrder.LITTLE_ENDIAN);
+        private DatagramChannel openUdpChannel() throws IOException {
+            return UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", udpPort), receivers > 1).get();
         }
 
-        private ObservableTransformer<ByteBuffer, BatchOfMsgReadings> linkMsgStreamToUdpPackets(Seq<Message> msgs) {
+        private ObservableTransformer<UdpDatagram, BatchOfMsgReadings> linkMsgStreamToUdpPackets(Seq<Message> msgs) {
+            MsgDecodePlan plan = MsgDecodePlan.compile(msgs, byteOrder);
+            // null when no field of the layout has a deadband
+            MsgDeadband deadband = MsgDeadband.isUsedBy(msgs) ? new MsgDeadband(msgs, heartbeatMs) : null;
+            BatchOfMsgReadings errorBatch = new BatchOfMsgReadings(0, keyDictionary::key);
             return incomingBatchOfMsgs -> incomingBatchOfMsgs
-                    .sample(1, TimeUnit.SECONDS, computation)//one data packet per second (most recent value within 1 second)
-                    .map(buf -> parseFromBufferIntoListOfMsgReadings(msgs, buf))
+                    .compose(sampleAndDecode(plan))
+                    // a sensor held inside its deadband is still updating, and its connection healthy
+                    .doOnNext(batch -> staleSensors.update(batch, computation.now(TimeUnit.MILLISECONDS)))
+                    .doOnNext(health::count)
+                    .filter(batch -> retainChanged(deadband, batch))
                     .doOnError(ex -> log.error("Error parsing data: {}", ex.getMessage()))
-                    .compose(onErrorInsert(Collections.EMPTY_LIST))
-                    .retry()
-                    .map(msgReadingList -> new BatchOfMsgReadings(msgReadingList));
+                    .doOnError(ex -> health.count(errorBatch))
+                    .compose(onErrorInsert(errorBatch))
+                    .retry();
 
         }
 
-        private List<MsgReading> parseFromBufferIntoListOfMsgReadings(Seq<Message> msgs, ByteBuffer buf) {
-            if (!checksum(buf)) {
-                log.warn("Bad msg checksum");
-                return Collections.EMPTY_LIST;
+        // datagrams that are not kept are released before they are decoded
+        private ObservableTransformer<UdpDatagram, BatchOfMsgReadings> sampleAndDecode(MsgDecodePlan plan) {
+            switch (samplingMode) {
+                case FULL:
+                    return udpDgrams -> udpDgrams
+                            .map(udpDgram -> parseAndRelease(plan, udpDgram));
+                case DECIMATE:
+                    AtomicLong received = new AtomicLong();
+                    return udpDgrams -> udpDgrams
+                            .filter(udpDgram -> keepOrRelease(udpDgram, received.getAndIncrement()))
+                            .map(udpDgram -> parseAndRelease(plan, udpDgram));
+                case AGGREGATE:
+                    return udpDgrams -> udpDgrams
+                            .window(periodMs, TimeUnit.MILLISECONDS, computation)
+                            .flatMapMaybe(window -> window
+                                    .reduce(new MsgWindowAggregate(plan), this::aggregateAndRelease)
+                                    .filter(aggregate -> !aggregate.isEmpty()))
+                            .map(aggregate -> aggregate.toBatch(keyDictionary::key));
+                default:
+                    return udpDgrams -> udpDgrams
+                            .window(periodMs, TimeUnit.MILLISECONDS, computation)//most recent value within each period
+                            .flatMapMaybe(window -> window.reduce(this::releaseOlder))
+                            .map(udpDgram -> parseAndRelease(plan, udpDgram));
             }
-            return msgs.map(msg -> readBufferValue(buf, msg)).toJavaList();
         }
 
-        // attempt to read data value and return it
-        // returns a NaN with bad quality if an exception occurs
-        private MsgReading readBufferValue(ByteBuffer buf, Message msg) {
-            return Try.of(() -> value(msg, buf))
-                    .map(value -> new MsgReading(msg, value.doubleValue(), MsgQuality.GOOD.byteValue()))
-                    .getOrElse(() -> new MsgReading(msg, Double.NaN, MsgQuality.BAD.byteValue()));
+        // batches left empty by the deadband are not emitted
+        private boolean retainChanged(MsgDeadband deadband, BatchOfMsgReadings batch) {
+            return deadband == null || deadband.retainChanged(batch, System.currentTimeMillis());
         }
 
-        // returns whether or not the checksum matches
-        private boolean checksum(ByteBuffer buf) {
-            int len = buf.limit() - 2; // checksum everything but the last two bytes
-            short sum = 0;
-            for (int i = 0; i < len; i++) {
-                sum += Byte.toUnsignedLong(buf.get(i));
+        // keeps one datagram out of every decimate
+        private boolean keepOrRelease(UdpDatagram udpDgram, long index) {
+            if (index % decimate == 0) {
+                return true;
             }
-            short expected = buf.getShort(len);
-            // System.out.printf("sum %s, expected %s", sum, expected).println();
-            return sum == expected; // compare sum to last two bytes 
+            udpDgram.release();
+            return false;
         }
 
-    }
+        // keeps the most recent datagram and hands the older buffer back to the pool
+        private UdpDatagram releaseOlder(UdpDatagram older, UdpDatagram newer) {
+            older.release();
+            return newer;
+        }
 
-    public static double value(Message msg, ByteBuffer buf) {
-        String dataType = msg.getDataType();
-        int byteOffset = msg.getByteOffset(),
-                bitOffset = msg.getBitOffset(),
-                bitSize = DataPrimitiveUtil.dataTypeBitSize(dataType);
-
-        // since our biggest value is 32 bits long can fit with an extra byte
-        switch (dataType) {
-            case "U1":
-                int value = Byte.toUnsignedInt(buf.get(byteOffset));
-                if (bitSize < 8) {
-                    // bit 0 is the highest value bit
-                    int shift = 8 - (bitSize + bitOffset); // lowest unused bits
-                    value >>>= shift; // shift down to match mask
+        private MsgWindowAggregate aggregateAndRelease(MsgWindowAggregate aggregate, UdpDatagram udpDgram) {
+            try {
+                ByteBuffer buf = udpDgram.getDatagram();
+                if (!checksum(buf)) {
+                    log.warn("Bad msg checksum");
+                    return aggregate;
                 }
-                value &= (1 << bitSize) - 1; // mask lowest n bits
-                return value;
-            case "U8":
-                return buf.get(byteOffset);
-            case "U16":
-            case "S16":
-                return buf.getShort(byteOffset);
-            case "U32":
-            case "S32":
-                return buf.getInt(byteOffset);
-            case "U64":
-            case "S64":
-                return buf.getLong(byteOffset);
-            case "F32":
-                return buf.getFloat(byteOffset);
-            case "F64":
-                return buf.getDouble(byteOffset);
-            default:
-                throw new RuntimeException("Invalid Data Type");
+                return aggregate.add(buf, TimeUnit.MILLISECONDS.toSeconds(udpDgram.getReceiveTime()));
+            } finally {
+                udpDgram.release();
+            }
+        }
+
+        private BatchOfMsgReadings parseAndRelease(MsgDecodePlan plan, UdpDatagram udpDgram) {
+            try {
+                return parseFromBufferIntoBatchOfMsgReadings(plan, udpDgram.getDatagram(),
+                        TimeUnit.MILLISECONDS.toSeconds(udpDgram.getReceiveTime()));
+            } finally {
+                udpDgram.release();
+            }
+        }
+
+        // a new batch per datagram since observers may hold on to it
+        private BatchOfMsgReadings parseFromBufferIntoBatchOfMsgReadings(MsgDecodePlan plan, ByteBuffer buf, long time) {
+            if (!checksum(buf)) {
+                log.warn("Bad msg checksum");
+                return new BatchOfMsgReadings(0, keyDictionary::key);
+            }
+            // fields that do not fit in the datagram are decoded as NaN with bad quality
+            BatchOfMsgReadings batch = new BatchOfMsgReadings(plan.size(), keyDictionary::key);
+            plan.decodeInto(buf, batch, time);
+            return batch;
+        }
+
+        // returns whether or not the integrity check in the last bytes matches
+        private boolean checksum(ByteBuffer buf) {
+            return integrity.verify(buf);
         }
 
     }
 
     @Synchronized
     public void loadMsgs(@Observes MsgConfig msgConfig) {
-        loadBatchOfMsgReadings(msgConfig.getMsgs(), msgSub, ms -> msgConfig.getMsgConnections().stream()
-                .filter(mc -> mc.getNameId().equalsIgnoreCase(ms.getMsgConn())).findAny().get().getPort(), UdpMsgInterface::new);
+        UdpSelectorEngine previousEngine = selectorEngine;
+        ExecutorService previousVirtualThreads = virtualThreads;
+        selectorEngine = createSelectorEngine(msgConfig);
+        virtualThreads = createVirtualThreads(msgConfig);
+        receiveScheduler = virtualThreads != null ? Schedulers.from(virtualThreads) : io;
+        // assigns the message ids used by the decode plans
+        MsgKeyDictionary keyDictionary = msgConfig.getKeyDictionary();
+        Function<Message, Integer> portOf = ms -> msgConfig.getMsgConnections().stream()
+                .filter(mc -> mc.getNameId().equalsIgnoreCase(ms.getMsgConn())).findAny().get().getPort();
+        StaleSensors staleSensors = new StaleSensors(Stream.ofAll(msgConfig.getMsgs()),
+                ms -> minStaleMs(connectionForPort(msgConfig, portOf.apply(ms))), keyDictionary::key);
+        loadBatchOfMsgReadings(msgConfig.getMsgs(), msgSub, portOf,
+                (port, msgs) -> new UdpMsgInterface(connectionForPort(msgConfig, port), keyDictionary, staleSensors, msgs),
+                msgConfig.getHealthWindowSeconds(),
+                staleSensors);
+        // the old streams have been disposed by now
+        if (previousEngine != null) {
+            previousEngine.dispose();
+        }
+        if (previousVirtualThreads != null) {
+            previousVirtualThreads.shutdown();
+        }
+    }
+
+    // connections that share a port are read together, the port settings
+    // come from the first of them in the connection config
+    private MsgConnection connectionForPort(MsgConfig msgConfig, int port) {
+        return msgConfig.getMsgConnections().stream()
+                .filter(mc -> mc.getPort() == port)
+                .findFirst().get();
+    }
+
+    // a sampled connection updates its sensors once a period at most, two periods
+    // leave room for the jitter of the sampling window
+    private static long minStaleMs(MsgConnection msgConn) {
+        SamplingMode mode = SamplingMode.fromSetting(msgConn.getSampling());
+        if (mode == SamplingMode.SAMPLE || mode == SamplingMode.AGGREGATE) {
+            return 2 * Math.max(1, msgConn.getPeriodMs());
+        }
+        return 0;
+    }
+
+    private ExecutorService createVirtualThreads(MsgConfig msgConfig) {
+        if (msgConfig.getIngestMode() != IngestMode.VIRTUAL || msgConfig.getMsgs().isEmpty()) {
+            return null;
+        }
+        Option<ExecutorService> executor = VirtualThreads.newPerTaskExecutor();
+        if (executor.isEmpty()) {
+            log.warn("Virtual threads are not supported by this JVM, reading Udp ports on io threads");
+        } else {
+            log.info("Reading Udp ports on virtual threads");
+        }
+        return executor.getOrNull();
+    }
+
+    private UdpSelectorEngine createSelectorEngine(MsgConfig msgConfig) {
+        if (msgConfig.getIngestMode() != IngestMode.SELECTOR || msgConfig.getMsgs().isEmpty()) {
+            return null;
+        }
+        log.info("Reading Udp ports with {} selector thread(s)", msgConfig.getSelectorThreads());
+        return Try.of(() -> new UdpSelectorEngine(msgConfig.getSelectorThreads()))
+                .onFailure(ex -> log.error("Unable to open Udp selector, falling back to blocking reads: {}", ex.getMessage()))
+                .getOrNull();
     }
 
 }
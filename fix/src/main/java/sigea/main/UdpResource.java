@@ -1,17 +1,16 @@
 package sigea.main;
 
 import sigea.entities.UdpDatagram;
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.util.Arrays;
 import io.vavr.control.Try;
 
 /**
- * * This class creates an Observable[UdpDatagram] from a Udp DatagramChannel
- * connection * @author Pasquale Livecchi
+ * * This class creates a Flowable[UdpDatagram] from a Udp DatagramChannel
+ * connection, receiving into buffers leased from a pool * @author Pasquale Livecchi
  */
 public class UdpResource implements Resource<UdpDatagram> {
 
@@ -24,20 +23,33 @@ public class UdpResource implements Resource<UdpDatagram> {
     }
 
     protected final DatagramChannel datagramChan;
-    protected final ByteBuffer buffer;
+    protected final ByteBufferPool pool;
 
-    private UdpResource(IoSupplier<DatagramChannel> ioChan) throws IOException {
+    private UdpResource(IoSupplier<DatagramChannel> ioChan, ByteBufferPool pool) throws IOException {
         this.datagramChan = ioChan.create();
-        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.pool = pool;
     }
 
+    /**
+     * Creates a pool sized for the largest possible datagram
+     *
+     * @param maxPooled
+     * @return
+     */
+    public static ByteBufferPool createDatagramPool(int maxPooled) {
+        return new ByteBufferPool(BUFFER_SIZE, maxPooled);
+    }
+
+    // receives straight into a leased direct buffer, the datagram must be
+    // released by the consumer to hand the buffer back to the pool
     @Override
     public UdpDatagram next() {
-        buffer.clear();
-        SocketAddress sockAddress = Try.of(() -> datagramChan.receive(buffer)).get();
-        // copy from index 0 to the current position
-        byte[] byteData = Arrays.copyOfRange(buffer.array(), 0, buffer.position());
-        return new UdpDatagram(sockAddress, ByteBuffer.wrap(byteData));
+        ByteBuffer leased = pool.lease();
+        SocketAddress sockAddress = Try.of(() -> datagramChan.receive(leased))
+                .onFailure(ex -> pool.release(leased))
+                .get();
+        leased.flip();
+        return new UdpDatagram(sockAddress, leased, pool::release);
     }
 
     @Override
@@ -50,12 +62,15 @@ public class UdpResource implements Resource<UdpDatagram> {
     }
 
     /**
-     * Continuously attempts to read values from the udp io channel
+     * Reads the udp io channel into buffers leased from the pool whenever
+     * downstream requests more datagrams. Every emitted datagram must be
+     * released.
      *
-     * @param func
+     * @param ioChan
+     * @param pool
      * @return
      */
-    public static Observable<UdpDatagram> openStream(IoSupplier<DatagramChannel> ioChan) {
-        return Resource.continuousResourceStream(() -> new UdpResource(ioChan));
+    public static Flowable<UdpDatagram> openPooledFlowable(IoSupplier<DatagramChannel> ioChan, ByteBufferPool pool) {
+        return Resource.flowableResourceStream(() -> new UdpResource(ioChan, pool));
     }
 }
@@ -0,0 +1,196 @@
+package sigea.main;
+
+import sigea.entities.UdpDatagram;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads any number of udp ports with a small fixed number of selector threads.
+ * Every port is registered as a non blocking channel on one of the selectors
+ * (round robin) and every ready channel is drained on each wakeup, so the
+ * thread count no longer grows with the number of connections.
+ *
+ * @author Pasquale Livecchi
+ */
+@Slf4j
+public class UdpSelectorEngine {
+
+    // upper bound of datagrams read from one channel per wakeup so a busy
+    // port cannot starve the other ports sharing its selector
+    private static final int MAX_READS_PER_WAKEUP = 256;
+
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     *
+     * @param threads - number of selector threads, at least one is used
+     * @throws IOException
+     */
+    public UdpSelectorEngine(int threads) throws IOException {
+        loops = new SelectorLoop[Math.max(1, threads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop(i);
+        }
+    }
+
+    /**
+     * Opens the channel on subscribe and emits every datagram received on it
+     * in a buffer leased from the pool, every emitted datagram must be
+     * released. Datagrams are emitted on the selector thread.
+     *
+     * @param ioChan
+     * @param pool
+     * @return
+     */
+    public Observable<UdpDatagram> openStream(UdpResource.IoSupplier<DatagramChannel> ioChan, ByteBufferPool pool) {
+        return Observable.create(emitter -> {
+            DatagramChannel chan = ioChan.create();
+            chan.configureBlocking(false);
+            SelectorLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            loop.register(chan, new Registration(emitter, pool));
+            emitter.setCancellable(() -> loop.deregister(chan));
+        });
+    }
+
+    /**
+     * Stops all selector threads and closes every channel still registered
+     */
+    public void dispose() {
+        for (SelectorLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    private static class Registration {
+
+        private final ObservableEmitter<UdpDatagram> emitter;
+        private final ByteBufferPool pool;
+
+        Registration(ObservableEmitter<UdpDatagram> emitter, ByteBufferPool pool) {
+            this.emitter = emitter;
+            this.pool = pool;
+        }
+    }
+
+    private static class SelectorLoop implements Runnable {
+
+        private final Selector selector;
+        // registration changes must run on the selector thread
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        SelectorLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "sigea-udp-selector-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void register(DatagramChannel chan, Registration reg) {
+            submit(() -> {
+                try {
+                    chan.register(selector, SelectionKey.OP_READ, reg);
+                } catch (IOException ex) {
+                    Try.run(chan::close);
+                    reg.emitter.onError(ex);
+                }
+            });
+        }
+
+        // closing cancels the key, the socket is let go of by the next select so
+        // other threads wait for it and can bind the port again right away
+        void deregister(DatagramChannel chan) {
+            Try.run(chan::close);
+            if (Thread.currentThread() != thread && running) {
+                CountDownLatch selected = new CountDownLatch(1);
+                submit(selected::countDown);
+                Try.run(() -> selected.await(1, TimeUnit.SECONDS));
+            }
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        private void submit(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+                    while (ready.hasNext()) {
+                        SelectionKey key = ready.next();
+                        ready.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            drain(key);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                log.error("Udp selector stopped unexpectedly", ex);
+            } finally {
+                close();
+            }
+        }
+
+        private void drain(SelectionKey key) {
+            DatagramChannel chan = (DatagramChannel) key.channel();
+            Registration reg = (Registration) key.attachment();
+            if (reg.emitter.isDisposed()) {
+                // a key left ready would wake the selector up again and again
+                key.cancel();
+                Try.run(chan::close);
+                return;
+            }
+            try {
+                for (int i = 0; i < MAX_READS_PER_WAKEUP; i++) {
+                    ByteBuffer leased = reg.pool.lease();
+                    SocketAddress sockAddress = chan.receive(leased);
+                    if (sockAddress == null) {
+                        reg.pool.release(leased);
+                        return;
+                    }
+                    leased.flip();
+                    reg.emitter.onNext(new UdpDatagram(sockAddress, leased, reg.pool::release));
+                }
+            } catch (IOException ex) {
+                key.cancel();
+                Try.run(chan::close);
+                reg.emitter.onError(ex);
+            }
+        }
+
+        private void close() {
+            for (SelectionKey key : selector.keys()) {
+                Try.run(key.channel()::close);
+            }
+            Try.run(selector::close);
+        }
+    }
+}
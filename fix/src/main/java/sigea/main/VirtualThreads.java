@@ -0,0 +1,29 @@
+package sigea.main;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads for a Java 8 build. Executors.newVirtualThreadPerTaskExecutor
+ * is looked up reflectively so the jar still runs on older jvms, which simply
+ * have no virtual threads.
+ *
+ * @author Pasquale Livecchi
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * An executor that starts a new virtual thread for every task
+     *
+     * @return the executor, or none when the jvm has no virtual threads
+     */
+    public static Option<ExecutorService> newPerTaskExecutor() {
+        return Try.of(() -> (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null))
+                .toOption();
+    }
+}
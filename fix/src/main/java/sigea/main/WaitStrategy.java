@@ -0,0 +1,72 @@
+package sigea.main;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a ring consumer does while the ring is empty, trading cpu for hand off
+ * latency
+ *
+ * @author Pasquale Livecchi
+ */
+public enum WaitStrategy {
+    // keeps a core busy, lowest latency
+    BUSY_SPIN {
+        @Override
+        public void idle(int attempts) {
+        }
+    },
+    // spins briefly then gives up the core between polls
+    YIELD {
+        @Override
+        public void idle(int attempts) {
+            if (attempts >= SPINS) {
+                Thread.yield();
+            }
+        }
+    },
+    // spins, yields, then sleeps for periods doubling up to MAX_PARK_NANOS,
+    // nearly no cpu when idle
+    PARK {
+        @Override
+        public void idle(int attempts) {
+            if (attempts >= SPINS + YIELDS) {
+                int parks = Math.min(attempts - SPINS - YIELDS, BACKOFFS);
+                LockSupport.parkNanos(Math.min(PARK_NANOS << parks, MAX_PARK_NANOS));
+            } else if (attempts >= SPINS) {
+                Thread.yield();
+            }
+        }
+    };
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    // doublings of the first park that reach the longest one
+    private static final int BACKOFFS = 5;
+
+    /**
+     * Called after each empty poll
+     *
+     * @param attempts - empty polls in a row before this one
+     */
+    public abstract void idle(int attempts);
+
+    /**
+     * Parses a config value, falling back to PARK when it is missing or not
+     * recognized
+     *
+     * @param value
+     * @return
+     */
+    public static WaitStrategy fromSetting(String value) {
+        if (value != null) {
+            for (WaitStrategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(value.trim())) {
+                    return strategy;
+                }
+            }
+        }
+        return PARK;
+    }
+}
@@ -0,0 +1,52 @@
+package sigea.test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.MsgQuality;
+import sigea.main.BroadcastFrames;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class BroadcastFramesTest {
+
+    private Message create(String fieldName) {
+        Message msg = new Message();
+        msg.setMsgName("test");
+        msg.setFieldName(fieldName);
+        return msg;
+    }
+
+    @Test
+    public void shouldEncodeKeysAndReadings() {
+        MsgKeyDictionary keys = new MsgKeyDictionary(Arrays.asList(create("a"), create("b")));
+        BroadcastFrames frames = new BroadcastFrames();
+        ByteBuffer keyFrame = frames.keys(keys);
+        assertEquals(keyFrame.remaining() - Integer.BYTES, keyFrame.getInt());
+        assertEquals(BroadcastFrames.KEYS, keyFrame.get());
+        assertEquals(2, keyFrame.getInt());
+        assertEquals(0, keyFrame.getInt());
+        byte[] key = new byte[keyFrame.getShort()];
+        keyFrame.get(key);
+        assertEquals("test:a", new String(key));
+
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(0, keys::key);
+        batch.add(1, 2.5, 42L, MsgQuality.GOOD.byteValue());
+        ByteBuffer readings = frames.readings(Arrays.asList(batch, new BatchOfMsgReadings(0, keys::key), batch));
+        assertEquals(Integer.BYTES + 1 + Integer.BYTES + 2 * BroadcastFrames.READING_BYTES, readings.remaining());
+        readings.position(Integer.BYTES);
+        assertEquals(BroadcastFrames.READINGS, readings.get());
+        assertEquals(2, readings.getInt());
+        readings.position(readings.position() + BroadcastFrames.READING_BYTES);
+        assertEquals(1, readings.getInt());
+        assertEquals(MsgQuality.GOOD.byteValue(), readings.get());
+        assertEquals(42L, readings.getLong());
+        assertEquals(2.5, readings.getDouble(), 0);
+    }
+}
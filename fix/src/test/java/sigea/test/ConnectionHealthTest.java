@@ -0,0 +1,64 @@
+package sigea.test;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.MsgQuality;
+import sigea.main.ConnectionHealth;
+import sigea.main.SequenceTracker;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class ConnectionHealthTest {
+
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte BAD = MsgQuality.BAD.byteValue();
+
+    private Message create(String msgName, String fieldName) {
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName(msgName);
+        msg.setFieldName(fieldName);
+        return msg;
+    }
+
+    @Test
+    public void shouldCountBatchesAndGroupsPerWindow() {
+        List<Message> msgs = List.of(create("a", "x"), create("a", "y"), create("b", "x"));
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        SequenceTracker sequence = new SequenceTracker();
+        ConnectionHealth health = new ConnectionHealth("testConn", msgs, true, Option.of(sequence));
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(3, keys::key);
+        batch.add(0, 1, 0, GOOD);
+        batch.add(1, 1, 0, BAD);
+        batch.add(2, 1, 0, BAD);
+        health.count(batch);
+        health.count(new BatchOfMsgReadings(0, keys::key));
+        sequence.track(0);
+        sequence.track(2);
+        ConnectionHealth.Window window = health.nextWindow();
+        assertEquals(1, window.getOkBatches());
+        assertEquals(1, window.getBadBatches());
+        assertEquals(1, window.getOkReadings());
+        assertEquals(2, window.getBadReadings());
+        assertEquals(1, window.getLost());
+        assertEquals(3, window.getExpected());
+        assertEquals(2, health.groupCount());
+        assertEquals("b", health.groupName(1));
+        assertEquals(1, window.getGroupOk(0));
+        assertEquals(1, window.getGroupBad(0));
+        assertEquals(0, window.getGroupOk(1));
+        assertEquals(1, window.getGroupBad(1));
+        // counts start over with every window
+        window = health.nextWindow();
+        assertEquals(0, window.getOkBatches() + window.getBadBatches());
+        assertEquals(0, window.getGroupBad(0));
+        assertEquals(0, window.getLost());
+    }
+}
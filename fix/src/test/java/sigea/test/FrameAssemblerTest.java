@@ -0,0 +1,85 @@
+package sigea.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.UdpDatagram;
+import sigea.main.ByteBufferPool;
+import sigea.main.FrameAssembler;
+import sigea.main.FrameFragments;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class FrameAssemblerTest {
+
+    private ByteBuffer frame(int length) {
+        ByteBuffer frame = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < length; i++) {
+            frame.put(i, (byte) (i * 7));
+        }
+        return frame;
+    }
+
+    private UdpDatagram datagram(ByteBuffer buf) {
+        return new UdpDatagram(null, buf, b -> {
+        });
+    }
+
+    @Test
+    public void shouldRebuildFrameFromFragmentsInAnyOrder() {
+        FrameAssembler assembler = new FrameAssembler(new ByteBufferPool(200 * 1024, 2), 1000);
+        ByteBuffer frame = frame(150 * 1024 + 3);
+        List<ByteBuffer> fragments = FrameFragments.split(frame, 7, FrameFragments.DEFAULT_PAYLOAD_BYTES);
+        assertEquals(19, fragments.size());
+        Collections.reverse(fragments);
+        UdpDatagram rebuilt = null;
+        for (ByteBuffer fragment : fragments) {
+            assertNull(rebuilt);
+            rebuilt = assembler.accept(datagram(fragment));
+        }
+        assertNotNull(rebuilt);
+        assertEquals(frame, rebuilt.getDatagram());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, rebuilt.getDatagram().order());
+        assertEquals(0, assembler.getDropped());
+    }
+
+    @Test
+    public void shouldDropIncompleteFrameWhenIdIsReused() {
+        FrameAssembler assembler = new FrameAssembler(new ByteBufferPool(64 * 1024, 2), 1000);
+        List<ByteBuffer> first = FrameFragments.split(frame(20000), 1, 8192);
+        List<ByteBuffer> second = FrameFragments.split(frame(9000), 1, 8192);
+        assertNull(assembler.accept(datagram(first.get(0))));
+        assertNull(assembler.accept(datagram(second.get(1))));
+        assertNotNull(assembler.accept(datagram(second.get(0))));
+        assertEquals(1, assembler.getDropped());
+    }
+
+    @Test
+    public void shouldExpireIncompleteFrameWithoutFurtherFragments() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 2);
+        FrameAssembler assembler = new FrameAssembler(pool, 1000);
+        List<ByteBuffer> fragments = FrameFragments.split(frame(20000), 3, 8192);
+        assertNull(assembler.accept(datagram(fragments.get(0))));
+        assembler.expire(System.currentTimeMillis());
+        assertEquals(0, assembler.getDropped());
+        assembler.expire(System.currentTimeMillis() + 1001);
+        assertEquals(1, assembler.getDropped());
+        // the frame buffer went back to the pool with the first slice in it,
+        // a new direct buffer would be zeroed
+        assertEquals((byte) 7, pool.lease().get(1));
+    }
+
+    @Test
+    public void shouldDropFragmentWithOverflowingSliceOffset() {
+        FrameAssembler assembler = new FrameAssembler(new ByteBufferPool(64 * 1024, 2), 1000);
+        ByteBuffer fragment = FrameFragments.split(frame(20000), 1, 8192).get(0);
+        fragment.putInt(8, Integer.MAX_VALUE - 100);
+        assertNull(assembler.accept(datagram(fragment)));
+        assertEquals(1, assembler.getDropped());
+    }
+}
@@ -0,0 +1,50 @@
+package sigea.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.main.IntegrityCheck;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class IntegrityCheckTest {
+
+    private ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void shouldMatchKnownCheckValues() {
+        assertEquals(0xC8F0, IntegrityCheck.FLETCHER16.compute(ascii("abcde"), 0, 5));
+        assertEquals(0xE3069283L, IntegrityCheck.CRC32C.compute(ascii("123456789"), 0, 9));
+    }
+
+    @Test
+    public void shouldSumLikeTheByteLoop() {
+        ByteBuffer buf = ByteBuffer.allocate(1021);
+        for (int i = 0; i < buf.capacity(); i++) {
+            buf.put(i, (byte) (i * 31 + 7));
+        }
+        short sum = 0;
+        for (int i = 3; i < buf.capacity(); i++) {
+            sum += Byte.toUnsignedLong(buf.get(i));
+        }
+        assertEquals(Short.toUnsignedLong(sum), IntegrityCheck.SUM16.compute(buf, 3, buf.capacity()));
+    }
+
+    @Test
+    public void shouldVerifySignedBuffer() {
+        for (IntegrityCheck check : IntegrityCheck.values()) {
+            ByteBuffer buf = ByteBuffer.allocate(37 + check.trailerBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putDouble(0, 50234230.4).putInt(30, -42);
+            check.sign(buf, 37);
+            assertTrue(check.name(), check.verify(buf));
+            buf.put(12, (byte) 1);
+            assertFalse(check.name(), check.verify(buf));
+        }
+    }
+}
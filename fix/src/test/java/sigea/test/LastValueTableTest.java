@@ -0,0 +1,49 @@
+package sigea.test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.MsgQuality;
+import sigea.main.LastValueTable;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class LastValueTableTest {
+
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte BAD = MsgQuality.BAD.byteValue();
+
+    private BatchOfMsgReadings batch(double value0, byte quality1, long time) {
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(0, id -> "key" + id);
+        batch.add(0, value0, time, GOOD);
+        batch.add(1, 7, time, quality1);
+        // unknown ids are ignored
+        batch.add(5, 1, time, GOOD);
+        return batch;
+    }
+
+    @Test
+    public void shouldOnlyReportChangedSensors() {
+        LastValueTable table = new LastValueTable(3, id -> "key" + id);
+        table.apply(batch(Double.NaN, GOOD, 1));
+        assertEquals(2, table.changes().size());
+        table.apply(batch(Double.NaN, GOOD, 2));
+        assertFalse(table.changes().hasData());
+        table.apply(batch(Double.NaN, BAD, 3));
+        table.apply(batch(4, BAD, 4));
+        BatchOfMsgReadings changes = table.changes();
+        assertEquals(2, changes.size());
+        assertEquals(4, changes.getValues()[0], 0);
+        assertEquals(BAD, changes.getQualities()[1]);
+        assertEquals(4, changes.getTimes()[1]);
+
+        table.apply(batch(5, BAD, 5));
+        BatchOfMsgReadings snapshot = table.peekSnapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals("key1", snapshot.getMsgKey(1));
+        assertEquals(2, table.snapshot().size());
+        assertEquals(0, table.changes().size());
+    }
+}
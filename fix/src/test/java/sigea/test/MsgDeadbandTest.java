@@ -0,0 +1,88 @@
+package sigea.test;
+
+import io.vavr.collection.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgQuality;
+import sigea.main.MsgDeadband;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgDeadbandTest {
+
+    private static final long START = 1_000_000;
+    private static final long HEARTBEAT_MS = 10_000;
+    private static final byte GOOD = MsgQuality.GOOD.byteValue();
+    private static final byte BAD = MsgQuality.BAD.byteValue();
+
+    private Message create(String fieldName, double deadband) {
+        Message msg = new Message();
+        msg.setMsgName("test");
+        msg.setFieldName(fieldName);
+        msg.setDeadband(deadband);
+        return msg;
+    }
+
+    // a single field deadband of 0.5
+    private final MsgDeadband deadband = new MsgDeadband(List.of(create("value", 0.5)), HEARTBEAT_MS);
+
+    private boolean kept(double value, byte quality, long now) {
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(1, id -> "key" + id);
+        batch.add(0, value, now / 1000, quality);
+        return deadband.retainChanged(batch, now);
+    }
+
+    @Test
+    public void shouldSuppressChangesInsideTheDeadband() {
+        assertTrue(kept(10, GOOD, START));
+        assertFalse(kept(10.4, GOOD, START + 100));
+        assertFalse(kept(9.5, GOOD, START + 200));
+        assertTrue(kept(10.6, GOOD, START + 300));
+        // measured from the last kept value
+        assertFalse(kept(10.2, GOOD, START + 400));
+    }
+
+    @Test
+    public void shouldReemitAfterTheHeartbeat() {
+        assertTrue(kept(10, GOOD, START));
+        assertFalse(kept(10, GOOD, START + HEARTBEAT_MS - 1));
+        assertTrue(kept(10, GOOD, START + HEARTBEAT_MS));
+        assertFalse(kept(10, GOOD, START + HEARTBEAT_MS + 1));
+    }
+
+    @Test
+    public void shouldAlwaysEmitQualityChanges() {
+        assertTrue(kept(10, GOOD, START));
+        assertTrue(kept(10, BAD, START + 100));
+        assertFalse(kept(10, BAD, START + 200));
+        assertTrue(kept(10, GOOD, START + 300));
+    }
+
+    @Test
+    public void shouldTreatNaNAsAChangeFromAnyNumber() {
+        assertTrue(kept(10, GOOD, START));
+        assertTrue(kept(Double.NaN, GOOD, START + 100));
+        assertFalse(kept(Double.NaN, GOOD, START + 200));
+        assertTrue(kept(10, GOOD, START + 300));
+    }
+
+    @Test
+    public void shouldKeepEveryReadingOfFieldsWithoutDeadband() {
+        List<Message> msgs = List.of(create("off", -1), create("on", 0));
+        assertFalse(MsgDeadband.isUsedBy(List.of(create("off", -1))));
+        assertTrue(MsgDeadband.isUsedBy(msgs));
+        MsgDeadband mixed = new MsgDeadband(msgs, HEARTBEAT_MS);
+        for (int i = 0; i < 3; i++) {
+            BatchOfMsgReadings batch = new BatchOfMsgReadings(2, id -> "key" + id);
+            batch.add(0, 1, START / 1000, GOOD);
+            batch.add(1, 1, START / 1000, GOOD);
+            assertTrue(mixed.retainChanged(batch, START + i));
+            assertEquals(i == 0 ? 2 : 1, batch.size());
+            assertEquals(0, batch.getSensorIds()[0]);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package sigea.test;
+
+import io.vavr.collection.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.MsgQuality;
+import sigea.entities.MsgReading;
+import sigea.main.DataPrimitiveUtil;
+import sigea.main.MsgDecodePlan;
+import sigea.main.MsgWindowAggregate;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgDecodePlanTest {
+
+    private Message create(String fieldName, int byteOffset, int bitOffset, String dataType) {
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName("test");
+        msg.setFieldName(fieldName);
+        msg.setByteOffset(byteOffset);
+        msg.setBitOffset(bitOffset);
+        msg.setDataType(dataType);
+        return msg;
+    }
+
+    private MsgDecodePlan plan() {
+        return MsgDecodePlan.compile(messages());
+    }
+
+    private List<Message> messages() {
+        return List.of(
+                create("float", 0, 0, "F32"),
+                create("unsigned_short", 4, 0, "U16"),
+                create("signed_long", 6, 0, "S64"),
+                create("double", 14, 0, "F64"),
+                create("unsigned_byteorchar", 22, 0, "U8"),
+                create("bool_3", 23, 3, "U1"),
+                create("bool_5", 23, 5, "U1"),
+                create("bool_7", 23, 7, "U1"));
+    }
+
+    private ByteBuffer packet() {
+        ByteBuffer packet = ByteBuffer.allocate(24)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putFloat(800.5f).putShort((short) 943)
+                .putLong(-50234230L).putDouble(50234230.4)
+                .put((byte) 25).put((byte) 25);
+        packet.flip();
+        return packet;
+    }
+
+    // the per field decoder the plan replaced, an oracle for the packed reads
+    private static double value(Message msg, ByteBuffer buf) {
+        String dataType = msg.getDataType();
+        int byteOffset = msg.getByteOffset(),
+                bitOffset = msg.getBitOffset(),
+                bitSize = DataPrimitiveUtil.dataTypeBitSize(dataType);
+
+        // since our biggest value is 32 bits long can fit with an extra byte
+        switch (dataType) {
+            case "U1":
+                int value = Byte.toUnsignedInt(buf.get(byteOffset));
+                if (bitSize < 8) {
+                    // bit 0 is the highest value bit
+                    int shift = 8 - (bitSize + bitOffset); // lowest unused bits
+                    value >>>= shift; // shift down to match mask
+                }
+                value &= (1 << bitSize) - 1; // mask lowest n bits
+                return value;
+            case "U8":
+                return buf.get(byteOffset);
+            case "U16":
+            case "S16":
+                return buf.getShort(byteOffset);
+            case "U32":
+            case "S32":
+                return buf.getInt(byteOffset);
+            case "U64":
+            case "S64":
+                return buf.getLong(byteOffset);
+            case "F32":
+                return buf.getFloat(byteOffset);
+            case "F64":
+                return buf.getDouble(byteOffset);
+            default:
+                throw new RuntimeException("Invalid Data Type");
+        }
+
+    }
+
+    @Test
+    public void shouldDecodeAllFields() {
+        MsgDecodePlan plan = plan();
+        double[] values = new double[plan.size()];
+        byte[] qualities = new byte[plan.size()];
+        plan.decode(packet(), values, qualities);
+        assertEquals(800.5, values[0], .1);
+        assertEquals(943, values[1], .1);
+        assertEquals(-50234230L, values[2], .1);
+        assertEquals(50234230.4, values[3], .1);
+        assertEquals(25, values[4], .1);
+        assertEquals(1, values[5], .1);
+        assertEquals(0, values[6], .1);
+        assertEquals(1, values[7], .1);
+        for (byte quality : qualities) {
+            assertEquals(MsgQuality.GOOD.byteValue(), quality);
+        }
+    }
+
+    @Test
+    public void shouldReadBadIfFieldIsPastLimit() {
+        MsgDecodePlan plan = plan();
+        double[] values = new double[plan.size()];
+        byte[] qualities = new byte[plan.size()];
+        ByteBuffer packet = packet();
+        packet.limit(10);
+        plan.decode(packet, values, qualities);
+        assertEquals(800.5, values[0], .1);
+        assertEquals(MsgQuality.GOOD.byteValue(), qualities[1]);
+        for (int i = 2; i < plan.size(); i++) {
+            assertTrue(Double.isNaN(values[i]));
+            assertEquals(MsgQuality.BAD.byteValue(), qualities[i]);
+        }
+    }
+
+    @Test
+    public void shouldReadBadForUnsupportedDataType() {
+        MsgDecodePlan plan = MsgDecodePlan.compile(messages().insert(1, create("unknown", 4, 0, "F16")));
+        double[] values = new double[plan.size()];
+        byte[] qualities = new byte[plan.size()];
+        plan.decode(packet(), values, qualities);
+        assertTrue(Double.isNaN(values[1]));
+        assertEquals(MsgQuality.BAD.byteValue(), qualities[1]);
+        assertEquals(800.5, values[0], .1);
+        assertEquals(943, values[2], .1);
+        assertEquals(1, values[8], .1);
+        for (int i = 2; i < plan.size(); i++) {
+            assertEquals(MsgQuality.GOOD.byteValue(), qualities[i]);
+        }
+    }
+
+    @Test
+    public void shouldAppendColumnsToBatch() {
+        List<Message> msgs = messages();
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        MsgDecodePlan plan = MsgDecodePlan.compile(msgs);
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(0, keys::key);
+        plan.decodeInto(packet(), batch, 42L);
+        plan.decodeInto(packet(), batch, 43L);
+        assertEquals(2 * plan.size(), batch.size());
+        assertEquals(plan.size() - 1, batch.getSensorIds()[plan.size() - 1]);
+        assertEquals(0, batch.getSensorIds()[plan.size()]);
+        assertEquals(43L, batch.getTimes()[plan.size()]);
+        MsgReading reading = batch.getMsgReadings().get(plan.size() + 1);
+        assertEquals("test:unsigned_short", reading.getMsgKey());
+        assertEquals(1, reading.getMsgId());
+        assertEquals(943, reading.getValue(), .1);
+        assertEquals(MsgQuality.GOOD.byteValue(), reading.getQuality());
+        batch.truncate(0);
+        assertFalse(batch.hasData());
+        assertTrue(batch.getMsgReadings().isEmpty());
+    }
+
+    @Test
+    public void shouldAggregateWindow() {
+        List<Message> msgs = messages();
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        MsgWindowAggregate aggregate = new MsgWindowAggregate(MsgDecodePlan.compile(msgs));
+        assertTrue(aggregate.isEmpty());
+        ByteBuffer truncated = packet();
+        truncated.limit(4);
+        aggregate.add(packet(), 42L).add(truncated, 43L);
+        BatchOfMsgReadings batch = aggregate.toBatch(keys::key);
+        assertTrue(batch.isAggregated());
+        assertEquals(43L, batch.getTimes()[0]);
+        assertEquals(800.5, batch.getValues()[0], .1);
+        assertEquals(800.5, batch.getMinimums()[0], .1);
+        assertEquals(943, batch.getMaximums()[1], .1);
+        assertEquals(MsgQuality.GOOD.byteValue(), batch.getQualities()[1]);
+    }
+
+    @Test
+    public void shouldDecodeWideLayoutInParallel() {
+        int fields = 50_000;
+        ByteBuffer packet = ByteBuffer.allocate(fields * 4 - 2).order(ByteOrder.LITTLE_ENDIAN);
+        List<Message> msgs = List.empty();
+        for (int i = fields - 1; i >= 0; i--) {
+            msgs = msgs.prepend(create("f" + i, i * 4, 0, "F32"));
+            if (i < fields - 1) {
+                packet.putFloat(i * 4, i + .5f);
+            }
+        }
+        MsgDecodePlan plan = MsgDecodePlan.compile(msgs);
+        double[] values = new double[fields + 1];
+        byte[] qualities = new byte[fields + 1];
+        plan.decode(packet, values, qualities, 1);
+        for (int i = 0; i < fields - 1; i++) {
+            assertEquals(i + .5, values[i + 1], 0);
+            assertEquals(MsgQuality.GOOD.byteValue(), qualities[i + 1]);
+        }
+        assertEquals(MsgQuality.BAD.byteValue(), qualities[fields]);
+    }
+
+    @Test
+    public void shouldReadFieldsInTheirOwnByteOrder() {
+        Message little = create("little", 0, 0, "S32");
+        little.setByteOrder("LITTLE_ENDIAN");
+        MsgDecodePlan plan = MsgDecodePlan.compile(List.of(
+                create("double", 4, 0, "F64"), little, create("short", 12, 0, "S16")), ByteOrder.BIG_ENDIAN);
+        ByteBuffer packet = ByteBuffer.allocate(14).order(ByteOrder.LITTLE_ENDIAN).putInt(-7);
+        packet.order(ByteOrder.BIG_ENDIAN).putDouble(2.25).putShort((short) -300);
+        double[] values = new double[plan.size()];
+        byte[] qualities = new byte[plan.size()];
+        // read through a view of the plan's order whatever order the buffer is in
+        plan.decode(packet.order(ByteOrder.LITTLE_ENDIAN), values, qualities);
+        assertEquals(2.25, values[0], 0);
+        assertEquals(-7, values[1], 0);
+        assertEquals(-300, values[2], 0);
+    }
+
+    @Test
+    public void shouldDecodeArrayFieldsIntoSlotPerElement() {
+        Message doubles = create("doubles", 0, 0, "F64");
+        doubles.setDimension("3");
+        Message shorts = create("shorts", 24, 0, "S16");
+        shorts.setDimension("2");
+        shorts.setByteOrder("BIG_ENDIAN");
+        Message bools = create("bools", 28, 6, "U1");
+        bools.setDimension("3");
+        Message truncated = create("truncated", 29, 0, "F32");
+        truncated.setDimension("2");
+        List<Message> msgs = List.of(doubles, shorts, bools, truncated);
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        MsgDecodePlan plan = MsgDecodePlan.compile(msgs);
+        assertEquals(10, plan.size());
+        assertEquals(10, keys.size());
+        assertEquals(3, shorts.getId());
+        assertEquals("test:bools[2]", plan.key(7));
+        assertEquals(7, keys.id("test:bools[2]"));
+        ByteBuffer packet = ByteBuffer.allocate(33).order(ByteOrder.LITTLE_ENDIAN)
+                .putDouble(1.5).putDouble(-2.5).putDouble(3.5);
+        packet.order(ByteOrder.BIG_ENDIAN).putShort((short) -4).putShort((short) 5);
+        // bools are bits 6 and 7 of byte 28 and bit 0 of byte 29
+        packet.put(28, (byte) 0b10).put(29, (byte) 0b1000_0000);
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(0, keys::key);
+        plan.decodeInto(packet, batch, 42L);
+        double[] values = batch.getValues();
+        assertArrayEquals(new double[]{1.5, -2.5, 3.5, -4, 5, 1, 0, 1}, Arrays.copyOf(values, 8), 0);
+        assertEquals(9, batch.getSensorIds()[9]);
+        assertEquals("test:truncated[1]", batch.getMsgKey(9));
+        for (int i = 8; i < 10; i++) {
+            assertTrue(Double.isNaN(values[i]));
+            assertEquals(MsgQuality.BAD.byteValue(), batch.getQualities()[i]);
+        }
+    }
+
+    @Test
+    public void shouldBulkReadArraysOfEveryTypeAndByteOrder() {
+        Random random = new Random(11);
+        for (String dataType : new String[]{"U8", "S16", "S32", "S64", "F32", "F64"}) {
+            int size = DataPrimitiveUtil.dataTypeBitSize(dataType) / 8;
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                Message array = create("array", 3, 0, dataType);
+                array.setDimension("5");
+                array.setByteOrder(order.toString());
+                MsgDecodePlan plan = MsgDecodePlan.compile(List.of(array));
+                ByteBuffer packet = ByteBuffer.allocate(3 + 5 * size).order(ByteOrder.LITTLE_ENDIAN);
+                random.nextBytes(packet.array());
+                double[] values = new double[plan.size()];
+                plan.decode(packet, values, new byte[plan.size()]);
+                for (int k = 0; k < 5; k++) {
+                    Message element = create("element", 3 + k * size, 0, dataType);
+                    assertEquals(dataType + " " + order + " [" + k + "]",
+                            value(element, packet.duplicate().order(order)), values[k], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadPackedBitsAWordAtATime() {
+        int bytes = 21;
+        List<Message> msgs = List.empty();
+        // every other bit, the last word runs past the datagram
+        for (int bit = bytes * 8 - 1; bit >= 0; bit -= 2) {
+            msgs = msgs.prepend(create("bit" + bit, bit / 8, bit % 8, "U1"));
+        }
+        ByteBuffer packet = ByteBuffer.allocate(bytes);
+        new Random(7).nextBytes(packet.array());
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            MsgDecodePlan plan = MsgDecodePlan.compile(msgs, order);
+            double[] values = new double[plan.size()];
+            byte[] qualities = new byte[plan.size()];
+            packet.limit(bytes);
+            plan.decode(packet, values, qualities);
+            for (int i = 0; i < plan.size(); i++) {
+                assertEquals(value(plan.message(i), packet), values[i], 0);
+                assertEquals(MsgQuality.GOOD.byteValue(), qualities[i]);
+            }
+            packet.limit(6);
+            plan.decode(packet, values, qualities);
+            assertEquals(value(plan.message(23), packet), values[23], 0);
+            assertEquals(MsgQuality.BAD.byteValue(), qualities[24]);
+        }
+    }
+
+    @Test
+    public void shouldFlagNonFiniteAndOutOfRangeValues() {
+        Message ranged = create("ranged", 0, 0, "S16");
+        ranged.setRangeLow(-10);
+        ranged.setRangeHigh(10);
+        Message doubles = create("doubles", 2, 0, "F64");
+        doubles.setDimension("3");
+        doubles.setRangeLow(0);
+        doubles.setRangeHigh(1);
+        MsgDecodePlan plan = MsgDecodePlan.compile(List.of(ranged, doubles, create("unranged", 26, 0, "F32")));
+        ByteBuffer packet = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) 11).putDouble(.5).putDouble(Double.NaN).putDouble(Double.NEGATIVE_INFINITY)
+                .putFloat(-1e30f);
+        double[] values = new double[plan.size()];
+        byte[] qualities = new byte[plan.size()];
+        plan.decode(packet, values, qualities);
+        assertEquals(11, values[0], 0);
+        assertEquals(MsgQuality.OUT_OF_RANGE.byteValue(), qualities[0]);
+        assertEquals(MsgQuality.GOOD.byteValue(), qualities[1]);
+        assertEquals(MsgQuality.BAD.byteValue(), qualities[2]);
+        assertEquals(MsgQuality.BAD.byteValue(), qualities[3]);
+        assertEquals(MsgQuality.GOOD.byteValue(), qualities[4]);
+    }
+}
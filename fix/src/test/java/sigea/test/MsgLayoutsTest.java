@@ -0,0 +1,79 @@
+package sigea.test;
+
+import io.reactivex.Observable;
+import io.reactivex.observables.ConnectableObservable;
+import io.reactivex.observers.TestObserver;
+import io.vavr.collection.List;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.Message;
+import sigea.entities.MsgType;
+import sigea.entities.UdpDatagram;
+import sigea.main.MsgLayouts;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgLayoutsTest {
+
+    private static final int TYPE_OFFSET = 2;
+
+    private final java.util.List<Integer> released = Collections.synchronizedList(new ArrayList<>());
+
+    private Message create(String fieldName, String layout) {
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName("test");
+        msg.setFieldName(fieldName);
+        msg.setLayout(layout);
+        return msg;
+    }
+
+    // the first byte tells datagrams apart
+    private UdpDatagram datagram(int tag, int type, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.put(0, (byte) tag);
+        if (TYPE_OFFSET < length) {
+            buf.put(TYPE_OFFSET, (byte) type);
+        }
+        return new UdpDatagram(null, buf, b -> released.add(tag));
+    }
+
+    private List<String> demultiplex(MsgLayouts layouts, UdpDatagram... udpDgrams) {
+        ConnectableObservable<UdpDatagram> udpPackets = Observable.fromArray(udpDgrams).publish();
+        TestObserver<String> decoded = Observable.merge(layouts.demultiplex(udpPackets, msgs -> dgrams -> dgrams
+                .map(udpDgram -> msgs.head().getFieldName() + udpDgram.getDatagram().get(0))))
+                .test();
+        udpPackets.connect();
+        decoded.assertComplete();
+        return List.ofAll(decoded.values());
+    }
+
+    @Test
+    public void shouldRouteDatagramsToTheirLayoutOnly() {
+        MsgLayouts layouts = new MsgLayouts(List.of(create("mt", "MT"), create("ifn", "IFN"), create("none", null)), TYPE_OFFSET, 0);
+        assertEquals(2, layouts.getLayouts().size());
+        List<String> decoded = demultiplex(layouts,
+                datagram(1, MsgType.MT.getTypeId(), 8),
+                datagram(2, MsgType.IFN.getTypeId(), 8),
+                datagram(3, 9, 8),
+                datagram(4, MsgType.MT.getTypeId(), 8),
+                datagram(5, MsgType.MT.getTypeId(), TYPE_OFFSET));
+        assertEquals(List.of("ifn2", "mt1", "mt4"), decoded.sorted());
+        // unknown types and datagrams too short for the header go back to the pool
+        assertEquals(Arrays.asList(3, 5), released);
+    }
+
+    @Test
+    public void shouldReadEveryDatagramWithoutTypeHeader() {
+        MsgLayouts layouts = new MsgLayouts(List.of(create("any", null)), -1, 0);
+        assertEquals(MsgLayouts.UNTYPED, layouts.layoutOf(ByteBuffer.allocate(8)));
+        assertEquals(List.of("any1", "any2"), demultiplex(layouts, datagram(1, 9, 8), datagram(2, 1, 1)));
+        assertTrue(released.isEmpty());
+    }
+}
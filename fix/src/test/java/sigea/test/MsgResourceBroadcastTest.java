@@ -0,0 +1,135 @@
+package sigea.test;
+
+import io.reactivex.schedulers.TestScheduler;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgConfig;
+import sigea.entities.MsgQuality;
+import sigea.main.BroadcastFrames;
+import sigea.main.MsgResourceBroadcast;
+
+/**
+ * Drives the broadcast loop with a test scheduler against clients on the GUI
+ * port
+ *
+ * @author Pasquale Livecchi
+ */
+public class MsgResourceBroadcastTest {
+
+    private final TestScheduler ts = new TestScheduler();
+    private final MsgResourceBroadcast broadcast = new MsgResourceBroadcast();
+    private final MsgConfig config = new MsgConfig();
+
+    private Message create(String msgName, String fieldName) {
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName(msgName);
+        msg.setFieldName(fieldName);
+        return msg;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Field scheduler = MsgResourceBroadcast.class.getDeclaredField("guiScheduler");
+        scheduler.setAccessible(true);
+        scheduler.set(broadcast, ts);
+        broadcast.initServerSocket();
+        config.setMsgs(Arrays.asList(create("pump", "a"), create("valve", "b")));
+        broadcast.loadConfig(config);
+    }
+
+    @After
+    public void tearDown() {
+        broadcast.dispose();
+    }
+
+    // lets the loopback deliver, then runs one pass of the broadcast loop
+    private void tick() throws InterruptedException {
+        Thread.sleep(50);
+        ts.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+    }
+
+    private Socket connect() throws IOException, InterruptedException {
+        Socket client = new Socket("localhost", 9069);
+        client.setSoTimeout(5000);
+        tick();
+        return client;
+    }
+
+    private void send(Socket client, String line) throws IOException, InterruptedException {
+        client.getOutputStream().write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        tick();
+    }
+
+    private String readUntil(InputStream in, String end) throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (!text.toString().endsWith(end)) {
+            text.append((char) in.read());
+        }
+        return text.toString();
+    }
+
+    private void publish() throws InterruptedException {
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(2, config.getKeyDictionary()::key);
+        batch.add(0, 1.5, 42, MsgQuality.GOOD.byteValue());
+        batch.add(1, 2.5, 42, MsgQuality.GOOD.byteValue());
+        broadcast.loadMsgReadings(batch);
+        tick();
+    }
+
+    @Test(timeout = 20000)
+    public void shouldResendKeysAndSnapshotOfSubscribedSensors() throws Exception {
+        try (Socket client = connect()) {
+            InputStream in = client.getInputStream();
+            String keys = readUntil(in, "DoneLoading\n");
+            assertTrue(keys.contains("pump:a\n") && keys.contains("valve:b\n"));
+            publish();
+            readUntil(in, "valve:b,GOOD,42,2.5\n");
+
+            send(client, "Subscribe msg:valve");
+            assertEquals("Loading\nvalve:b\nDoneLoading\n", readUntil(in, "DoneLoading\n"));
+            // the snapshot of the subscribed sensors only
+            assertEquals("valve:b,GOOD,42,2.5\n", readUntil(in, "\n"));
+            publish();
+            assertEquals(0, in.available());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void shouldSendSubscribedKeysWhenSwitchingToBinary() throws Exception {
+        try (Socket client = connect()) {
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            readUntil(in, "DoneLoading\n");
+            send(client, "Subscribe id:1");
+            readUntil(in, "DoneLoading\n");
+            send(client, "Binary");
+            assertEquals("Binary\n", readUntil(in, "\n"));
+            in.readInt();
+            assertEquals(BroadcastFrames.KEYS, in.readByte());
+            assertEquals(1, in.readInt());
+            assertEquals(1, in.readInt());
+            byte[] key = new byte[in.readShort()];
+            in.readFully(key);
+            assertEquals("valve:b", new String(key, StandardCharsets.UTF_8));
+
+            // nothing was read before the switch, so the reading comes as a change
+            publish();
+            in.readInt();
+            assertEquals(BroadcastFrames.READINGS, in.readByte());
+            assertEquals(1, in.readInt());
+            assertEquals(1, in.readInt());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package sigea.test;
+
+import io.reactivex.Flowable;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.OverflowStrategy;
+import sigea.main.OverflowBuffer;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class OverflowBufferTest {
+
+    private final List<Integer> released = new ArrayList<>();
+
+    private TestSubscriber<Integer> fillThenRequest(OverflowBuffer<Integer> buffer) {
+        TestSubscriber<Integer> sub = Flowable.range(1, 5)
+                .compose(buffer)
+                .test(0);
+        sub.requestMore(10);
+        return sub;
+    }
+
+    @Test
+    public void shouldDropOldest() {
+        OverflowBuffer<Integer> buffer = new OverflowBuffer<>(2, OverflowStrategy.DROP_OLDEST, released::add);
+        fillThenRequest(buffer).assertValues(4, 5).assertComplete();
+        assertEquals(3, buffer.getDropped());
+        assertEquals(3, released.size());
+    }
+
+    @Test
+    public void shouldDropNewest() {
+        OverflowBuffer<Integer> buffer = new OverflowBuffer<>(2, OverflowStrategy.DROP_NEWEST, released::add);
+        fillThenRequest(buffer).assertValues(1, 2).assertComplete();
+        assertEquals(3, buffer.getDropped());
+    }
+
+    @Test
+    public void shouldKeepLatest() {
+        OverflowBuffer<Integer> buffer = new OverflowBuffer<>(2, OverflowStrategy.LATEST, released::add);
+        fillThenRequest(buffer).assertValues(5).assertComplete();
+        assertEquals(4, buffer.getDropped());
+    }
+
+    @Test
+    public void shouldErrorOnOverflow() {
+        OverflowBuffer<Integer> buffer = new OverflowBuffer<>(2, OverflowStrategy.ERROR, released::add);
+        fillThenRequest(buffer).assertValues(1, 2).assertError(MissingBackpressureException.class);
+        assertEquals(1, buffer.getDropped());
+    }
+
+    @Test
+    public void shouldPassThroughWhenDownstreamKeepsUp() {
+        OverflowBuffer<Integer> buffer = new OverflowBuffer<>(2, OverflowStrategy.DROP_OLDEST, released::add);
+        Flowable.range(1, 100).compose(buffer).test().assertValueCount(100).assertComplete();
+        assertEquals(0, buffer.getDropped());
+    }
+}
@@ -0,0 +1,65 @@
+package sigea.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.main.RingBuffer;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class RingBufferTest {
+
+    @Test
+    public void shouldRejectOfferWhenFull() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test(timeout = 30000)
+    public void shouldHandEveryItemToExactlyOneConsumer() throws InterruptedException {
+        int items = 20_000;
+        RingBuffer<Integer> ring = new RingBuffer<>(64);
+        AtomicIntegerArray seen = new AtomicIntegerArray(items);
+        AtomicLong consumed = new AtomicLong();
+        List<Thread> consumers = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            Thread consumer = new Thread(() -> {
+                while (consumed.get() < items) {
+                    Integer item = ring.poll();
+                    if (item != null) {
+                        seen.incrementAndGet(item);
+                        consumed.incrementAndGet();
+                    }
+                }
+            });
+            consumer.start();
+            consumers.add(consumer);
+        }
+        for (int i = 0; i < items; i++) {
+            while (!ring.offer(i)) {
+                Thread.yield();
+            }
+        }
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        for (int i = 0; i < items; i++) {
+            assertEquals(1, seen.get(i));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sigea.test;
+
+import io.reactivex.Flowable;
+import io.reactivex.observers.TestObserver;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.main.RingHandoff;
+import sigea.main.WaitStrategy;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class RingHandoffTest {
+
+    private final List<Integer> released = new CopyOnWriteArrayList<>();
+    private final CountDownLatch consumerBlocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private RingHandoff<Integer> handoff(int capacity) {
+        return new RingHandoff<>(capacity, WaitStrategy.PARK, released::add, "test-ring");
+    }
+
+    // holds the consumer thread on the first item
+    private void block(Integer item) throws InterruptedException {
+        if (item == 0) {
+            consumerBlocked.countDown();
+            unblock.await();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldDropAndReleaseWhenFullThenEmitTheTail() throws InterruptedException {
+        RingHandoff<Integer> ring = handoff(4);
+        Flowable<Integer> upstream = Flowable.range(0, 100)
+                .delaySubscription(Flowable.fromCallable(() -> consumerBlocked.await(5, TimeUnit.SECONDS)))
+                .startWith(0);
+        TestObserver<Integer> received = ring.apply(upstream)
+                .doOnNext(this::block)
+                .test();
+        assertTrue(consumerBlocked.await(5, TimeUnit.SECONDS));
+        // the ring keeps 4 of the 100 items offered while the consumer is held
+        assertEquals(96, ring.getDropped());
+        assertEquals(96, released.size());
+        unblock.countDown();
+        received.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        received.assertComplete();
+        assertEquals(5, received.valueCount());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReleaseQueuedItemsOnDispose() throws InterruptedException {
+        RingHandoff<Integer> ring = handoff(16);
+        TestObserver<Integer> received = ring.apply(Flowable.range(0, 10).concatWith(Flowable.never()))
+                .doOnNext(this::block)
+                .test();
+        assertTrue(consumerBlocked.await(5, TimeUnit.SECONDS));
+        received.dispose();
+        unblock.countDown();
+        while (released.size() < 9) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, ring.getDropped());
+        assertEquals(1, received.valueCount());
+    }
+}
@@ -0,0 +1,57 @@
+package sigea.test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.main.SequenceTracker;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class SequenceTrackerTest {
+
+    private SequenceTracker track(int... sequences) {
+        SequenceTracker tracker = new SequenceTracker();
+        for (int sequence : sequences) {
+            tracker.track(sequence);
+        }
+        return tracker;
+    }
+
+    @Test
+    public void shouldCountGapsAcrossWrapAround() {
+        SequenceTracker tracker = track(Integer.MAX_VALUE - 1, Integer.MAX_VALUE, Integer.MIN_VALUE + 1, Integer.MIN_VALUE + 4);
+        assertEquals(4, tracker.getReceived());
+        assertEquals(3, tracker.getLost());
+        assertEquals(0, tracker.getRestarts());
+    }
+
+    @Test
+    public void shouldFillGapWithReorderedDatagram() {
+        SequenceTracker tracker = track(1, 2, 4, 5, 3);
+        assertEquals(0, tracker.getLost());
+        assertEquals(1, tracker.getReordered());
+        assertEquals(0, tracker.getDuplicates());
+    }
+
+    @Test
+    public void shouldCountDuplicates() {
+        SequenceTracker tracker = track(1, 2, 3, 2, 3, 4);
+        assertEquals(0, tracker.getLost());
+        assertEquals(2, tracker.getDuplicates());
+    }
+
+    @Test
+    public void shouldRestartWhenFarBehind() {
+        SequenceTracker tracker = track(1000, 1001, 0, 1, 2);
+        assertEquals(0, tracker.getLost());
+        assertEquals(1, tracker.getRestarts());
+    }
+
+    @Test
+    public void shouldRestartOnLargeJumpAhead() {
+        SequenceTracker tracker = track(1, 2, 2_000_000_000, 2_000_000_001, 2_000_000_003);
+        assertEquals(1, tracker.getLost());
+        assertEquals(1, tracker.getRestarts());
+    }
+}
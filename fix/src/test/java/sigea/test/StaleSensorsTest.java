@@ -0,0 +1,84 @@
+package sigea.test;
+
+import io.vavr.collection.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.MsgQuality;
+import sigea.main.StaleSensors;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class StaleSensorsTest {
+
+    private static final long START = 1_000_000;
+
+    private Message create(String fieldName, long staleMs) {
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName("test");
+        msg.setFieldName(fieldName);
+        msg.setStaleMs(staleMs);
+        return msg;
+    }
+
+    private BatchOfMsgReadings batch(MsgKeyDictionary keys) {
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(keys.size(), keys::key);
+        for (int id = 0; id < keys.size(); id++) {
+            batch.add(id, 1, START, MsgQuality.GOOD.byteValue());
+        }
+        return batch;
+    }
+
+    private BatchOfMsgReadings advance(StaleSensors stale, long from, long to) {
+        BatchOfMsgReadings all = new BatchOfMsgReadings(0, id -> null);
+        for (long now = from; now <= to; now += StaleSensors.TICK_MS) {
+            BatchOfMsgReadings batch = stale.advance(now);
+            for (int i = 0; i < batch.size(); i++) {
+                all.add(batch.getSensorIds()[i], batch.getValues()[i], batch.getTimes()[i], batch.getQualities()[i]);
+            }
+        }
+        return all;
+    }
+
+    @Test
+    public void shouldReportSensorStaleOncePerOutage() {
+        List<Message> msgs = List.of(create("fast", 500), create("never", 0), create("slow", 60_000));
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        StaleSensors stale = new StaleSensors(msgs, keys::key);
+        assertTrue(stale.isTracking());
+        stale.advance(START);
+        stale.update(batch(keys), START);
+        assertFalse(advance(stale, START, START + 400).hasData());
+        BatchOfMsgReadings fast = advance(stale, START + 500, START + 5_000);
+        assertEquals(1, fast.size());
+        assertEquals(0, fast.getSensorIds()[0]);
+        assertTrue(Double.isNaN(fast.getValues()[0]));
+        assertEquals(MsgQuality.UNKNOWN.byteValue(), fast.getQualities()[0]);
+        // back on the wheel once updated again
+        stale.update(batch(keys), START + 5_000);
+        assertEquals(1, advance(stale, START + 5_100, START + 5_600).size());
+        // longer than a turn of the wheel
+        BatchOfMsgReadings slow = advance(stale, START + 5_700, START + 65_100);
+        assertEquals(1, slow.size());
+        assertEquals(2, slow.getSensorIds()[0]);
+        assertEquals((START + 65_000) / 1000, slow.getTimes()[0]);
+    }
+
+    @Test
+    public void shouldRaiseTimeoutsShorterThanTheUpdatePeriod() {
+        List<Message> msgs = List.of(create("sampled", 500), create("never", 0));
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs.toJavaList());
+        StaleSensors stale = new StaleSensors(msgs, msg -> 2_000, keys::key);
+        stale.advance(START);
+        stale.update(batch(keys), START);
+        assertFalse(advance(stale, START, START + 1_900).hasData());
+        BatchOfMsgReadings sampled = advance(stale, START + 2_000, START + 5_000);
+        assertEquals(1, sampled.size());
+        assertEquals(0, sampled.getSensorIds()[0]);
+    }
+}
@@ -0,0 +1,57 @@
+package sigea.test;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.BatchOfMsgReadings;
+import sigea.entities.Message;
+import sigea.entities.MsgKeyDictionary;
+import sigea.entities.MsgQuality;
+import sigea.main.SubscriptionFilter;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class SubscriptionFilterTest {
+
+    private Message create(String msgName, String fieldName, String conn) {
+        Message msg = new Message();
+        msg.setMsgName(msgName);
+        msg.setFieldName(fieldName);
+        msg.setMsgConn(conn);
+        return msg;
+    }
+
+    @Test
+    public void shouldSelectSubscribedSensors() {
+        List<Message> msgs = Arrays.asList(create("pump", "a", "left"), create("pump", "b", "left"),
+                create("valve", "a", "right"), create("valve", "b", "right"));
+        MsgKeyDictionary keys = new MsgKeyDictionary(msgs);
+        assertTrue(SubscriptionFilter.isRequest("Subscribe msg:pump"));
+        assertFalse(SubscriptionFilter.isRequest("Subscribed"));
+        assertTrue(SubscriptionFilter.compile("Subscribe", msgs, keys).isAll());
+
+        SubscriptionFilter filter = SubscriptionFilter.compile("Subscribe msg:pump, conn:RIGHT", msgs, keys);
+        assertTrue(filter.includes(0) && filter.includes(3));
+        filter = SubscriptionFilter.compile("Subscribe prefix:valve:b,id:1,id:x", msgs, keys);
+        assertFalse(filter.includes(0) || filter.includes(2) || filter.includes(-1));
+        assertTrue(filter.includes(1) && filter.includes(3));
+
+        filter = SubscriptionFilter.compile("Subscribe id:0, 2,3", msgs, keys);
+        assertTrue(filter.includes(0) && filter.includes(2) && filter.includes(3));
+        assertFalse(filter.includes(1));
+        filter = SubscriptionFilter.compile("Subscribe valve", msgs, keys);
+        assertFalse(filter.isAll() || filter.includes(2));
+
+        BatchOfMsgReadings batch = new BatchOfMsgReadings(0, keys::key);
+        for (int id = 0; id < keys.size(); id++) {
+            batch.add(id, id, 1, MsgQuality.GOOD.byteValue());
+        }
+        BatchOfMsgReadings selected = SubscriptionFilter.compile("Subscribe id:2-9", msgs, keys).select(batch);
+        assertEquals(2, selected.size());
+        assertEquals(2, selected.getSensorIds()[0]);
+        assertEquals("valve:b", selected.getMsgKey(1));
+    }
+}
@@ -0,0 +1,63 @@
+package sigea.test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import io.vavr.control.Try;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.main.UdpInetUtil;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class UdpInetUtilTest {
+
+    @Test
+    public void shouldShareAPortAcrossReusePortReceivers() throws Exception {
+        Try<SocketOption<Boolean>> option = UdpInetUtil.reusePortOption();
+        if (option.isFailure()) {
+            assertTrue(option.getCause() instanceof UnsupportedOperationException);
+            assertTrue(UdpInetUtil.createUdpInetChannel(new InetSocketAddress(0), true).isFailure());
+        }
+        Assume.assumeTrue("SO_REUSEPORT is not supported here", option.isSuccess());
+        int port = UdpInetUtil.findRandomUnusedUdpPort();
+        SocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        List<DatagramChannel> chans = new ArrayList<>();
+        try {
+            for (int r = 0; r < 2; r++) {
+                DatagramChannel receiver = UdpInetUtil.createUdpInetChannel(address, true).get();
+                receiver.configureBlocking(false);
+                chans.add(receiver);
+                assertEquals(Boolean.TRUE, receiver.getOption(option.get()));
+            }
+            // the kernel hashes each source address and port to one receiver
+            int senders = 32;
+            for (int s = 0; s < senders; s++) {
+                DatagramChannel sender = UdpInetUtil.createUdpInetChannel(new InetSocketAddress(0)).get();
+                chans.add(sender);
+                sender.send(ByteBuffer.wrap(new byte[]{(byte) s}), address);
+            }
+            Thread.sleep(200);
+            int received = 0;
+            ByteBuffer buf = ByteBuffer.allocate(16);
+            for (int r = 0; r < 2; r++) {
+                while (chans.get(r).receive(buf) != null) {
+                    buf.clear();
+                    received++;
+                }
+            }
+            assertEquals(senders, received);
+        } finally {
+            for (DatagramChannel chan : chans) {
+                chan.close();
+            }
+        }
+    }
+}
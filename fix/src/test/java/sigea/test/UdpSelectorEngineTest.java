@@ -0,0 +1,78 @@
+package sigea.test;
+
+import io.reactivex.observers.TestObserver;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.UdpDatagram;
+import sigea.main.ByteBufferPool;
+import sigea.main.UdpInetUtil;
+import sigea.main.UdpResource;
+import sigea.main.UdpSelectorEngine;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class UdpSelectorEngineTest {
+
+    private UdpSelectorEngine engine;
+    private final ByteBufferPool pool = UdpResource.createDatagramPool(4);
+
+    @Before
+    public void setup() throws Exception {
+        engine = new UdpSelectorEngine(1);
+    }
+
+    @After
+    public void teardown() {
+        engine.dispose();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldReceiveOnEveryRegisteredPort() throws Exception {
+        int first = UdpInetUtil.findRandomUnusedUdpPort();
+        int second = UdpInetUtil.findRandomUnusedUdpPort();
+        TestObserver<Byte> received = engine
+                .openStream(() -> UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", first)).get(), pool)
+                .mergeWith(engine.openStream(() -> UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", second)).get(), pool))
+                .map(this::firstByteAndRelease)
+                .test();
+        Thread.sleep(100); // give the selector time to register both channels
+        try (DatagramChannel sender = UdpInetUtil.createUdpInetChannel(new InetSocketAddress(0)).get()) {
+            sender.send(ByteBuffer.wrap(new byte[]{1}), new InetSocketAddress("localhost", first));
+            sender.send(ByteBuffer.wrap(new byte[]{2}), new InetSocketAddress("localhost", second));
+        }
+        received.awaitCount(2);
+        received.assertValueSet(Arrays.asList((byte) 1, (byte) 2));
+        received.dispose();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldFreeThePortOnDispose() throws Exception {
+        int port = UdpInetUtil.findRandomUnusedUdpPort();
+        TestObserver<UdpDatagram> received = engine
+                .openStream(() -> UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", port)).get(), pool)
+                .test();
+        Thread.sleep(100); // give the selector time to register the channel
+        received.dispose();
+        try (DatagramChannel rebound = DatagramChannel.open()) {
+            rebound.bind(new InetSocketAddress("0.0.0.0", port));
+        }
+    }
+
+    private byte firstByteAndRelease(UdpDatagram dgram) {
+        try {
+            assertTrue(dgram.getDatagram().isDirect());
+            assertEquals(1, dgram.getDatagram().limit());
+            return dgram.getDatagram().get(0);
+        } finally {
+            dgram.release();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package sigea.test;
+
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.event.Event;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import sigea.entities.IngestMode;
+import sigea.entities.Message;
+import sigea.entities.MsgConfig;
+import sigea.entities.MsgConnection;
+import sigea.main.ByteBufferPool;
+import sigea.main.MsgAcquisition;
+import sigea.main.UdpInetUtil;
+import sigea.main.UdpMsgAcquisition;
+import sigea.main.UdpResource;
+import sigea.main.VirtualThreads;
+
+/**
+ *
+ * @author Pasquale Livecchi
+ */
+public class VirtualThreadsTest {
+
+    private final boolean supported = Try.of(() -> Executors.class.getMethod("newVirtualThreadPerTaskExecutor")).isSuccess();
+    private final UdpMsgAcquisition acquisition = new UdpMsgAcquisition();
+    private final Semaphore batches = new Semaphore(0);
+    private final int port = UdpInetUtil.findRandomUnusedUdpPort();
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    // a proxy rather than a mock so the test also runs on jvms with virtual threads
+    private static Event<?> event(Runnable onFire) {
+        return (Event<?>) Proxy.newProxyInstance(Event.class.getClassLoader(), new Class<?>[]{Event.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("fire")) {
+                        onFire.run();
+                    }
+                    return null;
+                });
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        return Try.of(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(thread)).getOrElse(false);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        field(MsgAcquisition.class, "computation").set(acquisition, Schedulers.computation());
+        field(MsgAcquisition.class, "io").set(acquisition, Schedulers.io());
+        field(MsgAcquisition.class, "sendData").set(acquisition, event(batches::release));
+        field(MsgAcquisition.class, "sendHealth").set(acquisition, event(() -> {
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        acquisition.loadMsgs(new MsgConfig());
+    }
+
+    private MsgConfig virtualConfig() {
+        MsgConnection msgConn = new MsgConnection("testConn");
+        msgConn.setPort(port);
+        Message msg = new Message();
+        msg.setMsgConn("testConn");
+        msg.setMsgName("test");
+        msg.setFieldName("float");
+        msg.setDataType("F32");
+        MsgConfig config = new MsgConfig();
+        config.setIngestMode(IngestMode.VIRTUAL);
+        config.getMsgConnections().add(msgConn);
+        config.getMsgs().add(msg);
+        return config;
+    }
+
+    // keeps sending until the port is read, the socket is opened asynchronously
+    private boolean awaitReceiving() throws Exception {
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            for (int i = 0; i < 50; i++) {
+                sender.send(ByteBuffer.wrap(new byte[4]), new InetSocketAddress("localhost", port));
+                if (batches.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // the socket is closed once the receive loop wakes up, and a sampled
+    // connection only lets go of it at the end of its current window
+    private void assertPortFree() throws Exception {
+        Try<Void> bound = Try.failure(new IllegalStateException());
+        for (int i = 0; i < 40 && bound.isFailure(); i++) {
+            Thread.sleep(50);
+            bound = Try.withResources(DatagramChannel::open)
+                    .of(rebound -> rebound.bind(new InetSocketAddress("0.0.0.0", port)))
+                    .map(rebound -> null);
+        }
+        bound.get();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReadPortsWithOrWithoutVirtualThreads() throws Exception {
+        Option<ExecutorService> executor = VirtualThreads.newPerTaskExecutor();
+        executor.forEach(ExecutorService::shutdown);
+        assertEquals(supported, executor.isDefined());
+        acquisition.loadMsgs(virtualConfig());
+        assertTrue(awaitReceiving());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReceiveOnVirtualThread() throws Exception {
+        Assume.assumeTrue("the jvm has no virtual threads", supported);
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor().get();
+        try {
+            TestSubscriber<Boolean> receivedOn = UdpResource.openPooledFlowable(
+                    () -> UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", port)).get(), new ByteBufferPool(64, 1))
+                    .subscribeOn(Schedulers.from(executor))
+                    .map(udpDgram -> {
+                        udpDgram.release();
+                        return isVirtual(Thread.currentThread());
+                    })
+                    .test();
+            try (DatagramChannel sender = DatagramChannel.open()) {
+                while (!receivedOn.awaitTerminalEvent(100, TimeUnit.MILLISECONDS) && receivedOn.valueCount() == 0) {
+                    sender.send(ByteBuffer.wrap(new byte[4]), new InetSocketAddress("localhost", port));
+                }
+            }
+            receivedOn.dispose();
+            assertEquals(Boolean.TRUE, receivedOn.values().get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldFreeThePortWhenDisposedOnAnExecutor() throws Exception {
+        // a platform executor does not interrupt its threads on dispose either
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor().getOrElse(Executors::newSingleThreadExecutor);
+        try {
+            TestSubscriber<?> received = UdpResource.openPooledFlowable(
+                    () -> UdpInetUtil.createUdpInetChannel(new InetSocketAddress("0.0.0.0", port)).get(), new ByteBufferPool(64, 1))
+                    .subscribeOn(Schedulers.from(executor))
+                    .test();
+            Thread.sleep(200); // give the receive loop time to block
+            received.dispose();
+            assertPortFree();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldFreeThePortOnReload() throws Exception {
+        acquisition.loadMsgs(virtualConfig());
+        assertTrue(awaitReceiving());
+        acquisition.loadMsgs(new MsgConfig());
+        assertPortFree();
+    }
+}
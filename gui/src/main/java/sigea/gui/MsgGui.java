@@ -1,10 +1,12 @@
 package sigea.gui;
 
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
@@ -23,18 +25,30 @@ import lombok.extern.slf4j.Slf4j;
 public class MsgGui extends javax.swing.JFrame {
 
     private static final DateFormat DATE_FMT = new SimpleDateFormat("HH:mm:ss:SSS");
+    // asks the server for binary frames, answered with the same line
+    private static final String BINARY_REQUEST = "Binary";
+    // frame types of the binary protocol, see BroadcastFrames in the fix module
+    private static final byte KEYS = 1;
+    private static final byte READINGS = 2;
+    private static final byte SNAPSHOT = 4;
+    // quality names by quality byte, see MsgQuality in the fix module
+    private static final String[] QUALITIES = {"NONE", "UNKNOWN", "BAD", "GOOD", "OUT_OF_RANGE"};
     private Timer animationTimer;
     private Socket sock;
-    private BufferedReader readBuffer;
+    private DataInputStream readBuffer;
     private Map<String, Integer> rowmap;
+    private Map<Integer, String> idKeys;
     private volatile boolean isLoading;
+    private boolean isBinary;
 // private int nodata;
 
     void setupSocket() {
         if (sock == null) {
             try {
                 sock = new Socket("localhost", 9069);
-                readBuffer = new BufferedReader(new InputStreamReader(sock.getInputStream()));
+                readBuffer = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+                isBinary = false;
+                sock.getOutputStream().write((BINARY_REQUEST + "\n").getBytes(StandardCharsets.UTF_8));
                 setTitle("Sigea Msg Gui -> Connected");
             } catch (IOException ex) {
                 System.out.printf("Error During Socket Setup: %s", ex.getMessage());
@@ -47,12 +61,22 @@ public class MsgGui extends javax.swing.JFrame {
 
     void readMsgs() {
         try {
-            while (readBuffer.ready()) {
+            while (readBuffer.available() > 0) {
                 // nodata = -1; 
-                String line = readBuffer.readLine();
+                if (isBinary) {
+                    if (!readCompleteFrame()) {
+                        // the rest of the frame comes with a later tick
+                        break;
+                    }
+                    continue;
+                }
+                String line = readLine();
 
                 if (line != null) {
                     switch (line) {
+                        case BINARY_REQUEST:
+                            isBinary = true;
+                            break;
                         case "Loading":
                             isLoading = true;
                             clear();
@@ -80,6 +104,69 @@ public class MsgGui extends javax.swing.JFrame {
         }
     }
 
+    // text lines are read off the same stream as the frames that may follow them
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = readBuffer.read()) != '\n') {
+            if (b < 0) {
+                return line.size() > 0 ? line.toString("UTF-8") : null;
+            }
+            line.write(b);
+        }
+        return line.toString("UTF-8");
+    }
+
+    // runs on the event dispatch thread so a frame is only read once all of it
+    // has arrived, reads never wait on the socket
+    private boolean readCompleteFrame() throws IOException {
+        if (readBuffer.available() < Integer.BYTES) {
+            return false;
+        }
+        readBuffer.mark(Integer.BYTES);
+        int length = readBuffer.readInt();
+        if (readBuffer.available() < length) {
+            readBuffer.reset();
+            return false;
+        }
+        readFrame(length);
+        return true;
+    }
+
+    private void readFrame(int length) throws IOException {
+        byte type = readBuffer.readByte();
+        switch (type) {
+            case KEYS:
+                clear();
+                idKeys.clear();
+                for (int count = readBuffer.readInt(); count > 0; count--) {
+                    int id = readBuffer.readInt();
+                    byte[] key = new byte[readBuffer.readShort()];
+                    readBuffer.readFully(key);
+                    idKeys.put(id, new String(key, StandardCharsets.UTF_8));
+                    addKeyToRowMap(idKeys.get(id));
+                }
+                break;
+            case READINGS:
+            case SNAPSHOT:
+                for (int count = readBuffer.readInt(); count > 0; count--) {
+                    String key = idKeys.get(readBuffer.readInt());
+                    byte quality = readBuffer.readByte();
+                    long time = readBuffer.readLong();
+                    double value = readBuffer.readDouble();
+                    if (key != null) {
+                        addMsgToGuiTable(new String[]{key,
+                            quality >= 0 && quality < QUALITIES.length ? QUALITIES[quality] : QUALITIES[0],
+                            Long.toString(time), Double.toString(value)});
+                    }
+                }
+                break;
+            default:
+                // pongs and frames of later versions
+                readBuffer.skipBytes(length - 1);
+        }
+    }
+
     @Override
     protected void frameInit() {
         super.frameInit();
@@ -88,6 +175,7 @@ public class MsgGui extends javax.swing.JFrame {
         setTitle("Sigea Msg Gui");
         setSize(800, 600);
         rowmap = new HashMap<>();
+        idKeys = new HashMap<>();
         animationTimer = new Timer(100, evt -> {
             setupSocket();
             if (sock != null) {
@@ -1,10 +1,13 @@
 package sigea.simulation;
 
 import sigea.main.DataPrimitiveUtil;
+import sigea.main.FrameFragments;
+import sigea.main.IntegrityCheck;
 import sigea.entities.MsgConfig;
 import sigea.entities.MsgReading;
 import sigea.entities.Message;
 import sigea.entities.MsgConnection;
+import sigea.entities.MsgType;
 import io.reactivex.functions.Consumer;
 import io.vavr.Tuple;
 
@@ -12,6 +15,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
 
 import io.vavr.collection.Map;
 import io.vavr.collection.Seq;
@@ -28,15 +32,40 @@ public class MsgSimPanel extends SimulationPanel {
         private final Map<MsgConnection, Integer> bufSizeMap;
         private final DatagramChannel udpChan;
         private final MsgConfig msgCfg;
+        // next sequence number of each numbered connection
+        private final HashMap<MsgConnection, Integer> sequences = new HashMap<>();
+        // last frame id of each fragmented connection
+        private final HashMap<MsgConnection, Integer> frameIds = new HashMap<>();
 
         public MsgSim(MsgConfig msgCfg, DatagramChannel udpChan, String hostIp) {
             this.msgCfg = msgCfg;
             this.hostIp = hostIp;
             this.udpChan = udpChan;
-            messageMap = Stream.ofAll(msgCfg.getMsgs()).toMap(msg -> Tuple.of(msg.uniqueKeyName(), msg));
+            messageMap = Stream.ofAll(msgCfg.getMsgs())
+                    .flatMap(msg -> Stream.range(0, msg.arrayLength()).map(i -> element(msg, i)))
+                    .toMap(msg -> Tuple.of(msg.uniqueKeyName(), msg));
             bufSizeMap = messageMap.values()
                     .groupBy(msg -> getMsgConnection(msg.getMsgConn()))
-                    .mapValues(this::bufferSize);
+                    .map((msgConn, msgs) -> Tuple.of(msgConn, FrameFragments.frameBytes(msgConn, msgs)));
+        }
+
+        // a scalar message for an element of an array field, keyed like the element
+        private static Message element(Message msg, int index) {
+            if (msg.arrayLength() == 1) {
+                return msg;
+            }
+            int bitSize = DataPrimitiveUtil.dataTypeBitSize(msg.getDataType());
+            int bit = msg.getByteOffset() * 8 + msg.getBitOffset() + index * bitSize;
+            Message element = new Message();
+            element.setMsgConn(msg.getMsgConn());
+            element.setMsgName(msg.getMsgName());
+            element.setFieldName(msg.getFieldName() + "[" + index + "]");
+            element.setDataType(msg.getDataType());
+            element.setByteOffset(bit / 8);
+            element.setBitOffset(bit % 8);
+            element.setByteOrder(msg.getByteOrder());
+            element.setLayout(msg.getLayout());
+            return element;
         }
 
         private MsgConnection getMsgConnection(String msgConnName) {
@@ -85,14 +114,6 @@ public class MsgSimPanel extends SimulationPanel {
             }
         }
 
-        private int bufferSize(Seq<Message> msgs) {
-            int highestBit = msgs
-                    .map(m -> m.getByteOffset() * 8 + m.getBitOffset() + DataPrimitiveUtil.dataTypeBitSize(m.getDataType()))
-                    .max().getOrElse(0);
-            //+2 for checksum 
-            return (int) Math.ceil(highestBit / 8.0) + 2;
-        }
-
         private Option<SimulationValue<Message>> mapMsgReadingToSimVal(MsgReading msgReading) {
             return messageMap.get(msgReading.getMsgKey())
                     .map(msg -> new SimulationValue<>(msg, msgReading.getValue()));
@@ -104,19 +125,45 @@ public class MsgSimPanel extends SimulationPanel {
                     .groupBy(sv -> sv.msg.getMsgConn())
                     .forEach((msgConnName, simValSeq) -> {
                         MsgConnection msgConn = getMsgConnection(msgConnName);
-                        int bufSizeInBytes = bufSizeMap.get(msgConn).get();
-                        ByteBuffer buf = ByteBuffer.allocate(bufSizeInBytes)
-                                .order(ByteOrder.LITTLE_ENDIAN);
-                        simValSeq.forEach(sv -> writeToBuffer(buf, sv.getMsg(), sv.getVal()));
-//                        System.out.printf("DOES THIS SHIT GET CALLED???").println();
-                        checksum(buf, bufSizeInBytes - 2);
-                        Try.run(() -> udpChan.send(buf, new InetSocketAddress(hostIp, msgConn.getPort())));
+                        if (msgConn.getTypeOffset() < 0) {
+                            send(msgConn, null, simValSeq);
+                        } else {
+                            // a datagram per layout
+                            simValSeq.filter(sv -> sv.getMsg().getMsgType() != null)
+                                    .groupBy(sv -> sv.getMsg().getMsgType())
+                                    .forEach((msgType, layoutSimVals) -> send(msgConn, msgType, layoutSimVals));
+                        }
                     });
         }
 
-        private void checksum(ByteBuffer buffer, int bufLengthWithoutChecksum) {
-            short checksum = (short) UdpUtil.checksum(buffer, 0, bufLengthWithoutChecksum);
-            buffer.putShort(bufLengthWithoutChecksum, checksum);
+        private void send(MsgConnection msgConn, MsgType msgType, Seq<SimulationValue<Message>> simValSeq) {
+            int bufSizeInBytes = bufSizeMap.get(msgConn).get();
+            ByteOrder order = DataPrimitiveUtil.byteOrder(msgConn.getByteOrder(), ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer buf = ByteBuffer.allocate(bufSizeInBytes);
+            // fields may have a byte order of their own
+            simValSeq.forEach(sv -> writeToBuffer(buf.order(DataPrimitiveUtil.byteOrder(sv.getMsg().getByteOrder(), order)),
+                    sv.getMsg(), sv.getVal()));
+            buf.order(order);
+            if (msgConn.getSequenceOffset() >= 0) {
+                buf.putInt(msgConn.getSequenceOffset(), sequences.merge(msgConn, 1, Integer::sum) - 1);
+            }
+            if (msgType != null) {
+                buf.put(msgConn.getTypeOffset(), (byte) msgType.getTypeId());
+            }
+            IntegrityCheck integrity = integrity(msgConn);
+            integrity.sign(buf, bufSizeInBytes - integrity.trailerBytes());
+            InetSocketAddress target = new InetSocketAddress(hostIp, msgConn.getPort());
+            if (msgConn.isFragmented()) {
+                int frameId = frameIds.merge(msgConn, 1, Integer::sum);
+                FrameFragments.split(buf, frameId, FrameFragments.DEFAULT_PAYLOAD_BYTES)
+                        .forEach(fragment -> Try.run(() -> udpChan.send(fragment, target)));
+            } else {
+                Try.run(() -> udpChan.send(buf, target));
+            }
+        }
+
+        private IntegrityCheck integrity(MsgConnection msgConn) {
+            return IntegrityCheck.fromSetting(msgConn.getIntegrity());
         }
     }
 
@@ -5,8 +5,8 @@ import java.net.StandardProtocolFamily;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
-import io.vavr.collection.Stream;
 import io.vavr.control.Try;
+import sigea.main.IntegrityCheck;
 
 public class UdpUtil {
 
@@ -22,11 +22,6 @@ public class UdpUtil {
     }
 
     public static int checksum(ByteBuffer buffer, int headerLength, int msgLength) {
-        return Stream.ofAll(buffer.array())
-                .drop(headerLength)
-                .take(msgLength)
-                .map(Byte::toUnsignedLong)
-                .sum()
-                .shortValue();
+        return (short) IntegrityCheck.SUM16.compute(buffer, headerLength, headerLength + msgLength);
     }
 }